@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.bench;
+
+import io.github.dector.sokoban.check.SyntheticLevels;
+import io.github.dector.sokoban.level.Board;
+import io.github.dector.sokoban.level.CompiledLevel;
+import io.github.dector.sokoban.level.LevelCache;
+import io.github.dector.sokoban.level.TmxLevelReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-GL part of {@code World.init}: getting a level from TMX source, from cache, and building its board.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelLoadBenchmark {
+
+    private static final String NAME = "synthetic.tmx";
+
+    @Param({"7", "100", "1000"})
+    public int size;
+
+    private File cacheDir;
+    private LevelCache cache;
+
+    private byte[] tmxSource;
+    private byte[] compiled;
+    private CompiledLevel level;
+
+    @Setup
+    public void setUp() throws IOException {
+        int boxes = Math.max(1, size * size / 100);
+        tmxSource = SyntheticLevels.toTmx(SyntheticLevels.create(size, boxes)).getBytes("UTF-8");
+
+        cacheDir = File.createTempFile("level-cache", "");
+        if (! cacheDir.delete() || ! cacheDir.mkdir()) {
+            throw new IOException("Can't create " + cacheDir);
+        }
+        cache = new LevelCache(cacheDir);
+        level = cache.load(tmxSource, NAME);
+
+        File compiledFile = new File(cacheDir, "compiled");
+        level.write(compiledFile);
+        RandomAccessFile in = new RandomAccessFile(compiledFile, "r");
+        try {
+            compiled = new byte[(int) in.length()];
+            in.readFully(compiled);
+        } finally {
+            in.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    @Benchmark
+    public CompiledLevel parseTmx() throws IOException {
+        return TmxLevelReader.read(tmxSource, NAME);
+    }
+
+    @Benchmark
+    public CompiledLevel loadCached() throws IOException {
+        return cache.load(tmxSource, NAME);
+    }
+
+    @Benchmark
+    public CompiledLevel readCompiled() throws IOException {
+        return CompiledLevel.read(ByteBuffer.wrap(compiled));
+    }
+
+    @Benchmark
+    public Board toBoard() {
+        return level.toBoard();
+    }
+}
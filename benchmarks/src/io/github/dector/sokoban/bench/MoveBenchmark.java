@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.bench;
+
+import io.github.dector.sokoban.check.SyntheticLevels;
+import io.github.dector.sokoban.level.Board;
+import io.github.dector.sokoban.level.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Move validation and pushes on the headless board, which is what {@code World.tryMovePlayer} runs per move.
+ * Every move is reverted, so the board stays the same between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+
+    @Param({"7", "100", "1000"})
+    public int size;
+
+    private Board board;
+
+    @Setup
+    public void setUp() {
+        board = SyntheticLevels.create(size, 1).toBoard();
+    }
+
+    @Benchmark
+    public int walk() {
+        int pushed = board.move(World.Direction.DOWN);
+        board.undoMove(World.Direction.DOWN, pushed);
+        return pushed;
+    }
+
+    @Benchmark
+    public int push() {
+        int pushed = board.move(World.Direction.RIGHT);
+        board.undoMove(World.Direction.RIGHT, pushed);
+        return pushed;
+    }
+
+    @Benchmark
+    public boolean blocked() {
+        return board.canMove(World.Direction.LEFT);
+    }
+}
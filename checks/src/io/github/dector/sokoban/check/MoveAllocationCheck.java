@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.check;
+
+import aurelienribon.tweenengine.*;
+import io.github.dector.sokoban.level.Board;
+import io.github.dector.sokoban.level.PreparedLevel;
+import io.github.dector.sokoban.level.Session;
+import io.github.dector.sokoban.level.World;
+import io.github.dector.sokoban.states.HudText;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Plays a level through the same {@link Session} world uses: key moves with buffering, click walks, box drags,
+ * undo, redo and restart. Moves are animated by pooled tweens and HUD text is rebuilt as the game does it.
+ * Exits with non-zero code if anything was allocated after warm-up.
+ */
+public class MoveAllocationCheck {
+
+    private static final int SIZE = 12;
+    private static final int BOXES_COUNT = 8;
+
+    private static final int MOVES_COUNT = 256;
+    private static final int CLICKS_COUNT = 32;
+    private static final int WARM_UP_ROUNDS = 300;
+    private static final int ROUNDS = 50;
+
+    private static final float FRAME_TIME = 1 / 60f;
+    private static final float MOVE_DURATION = .1f;
+
+    private static final int XY = 1;
+
+    private final TweenManager tweens = new TweenManager();
+    private final HudText hudText = new HudText();
+    private final Session session;
+
+    private final Sprite player = new Sprite();
+    private final Sprite box = new Sprite();
+
+    private final World.Direction[] moves = new World.Direction[MOVES_COUNT];
+    private final int[] clicks = new int[CLICKS_COUNT * 2];
+
+    // Read from HUD text, so building it isn't optimized away
+    private long hudChars;
+
+    private final TweenCallback playerMovedCallback = new TweenCallback() {
+        @Override
+        public void onEvent(int event, BaseTween<?> baseTween) {
+            if (event == TweenCallback.COMPLETE) {
+                session.moveFinished();
+            }
+        }
+    };
+
+    // Animates moves the way world does, on plain objects instead of sprites
+    private final Session.View view = new Session.View() {
+        @Override
+        public void boxMoved(int fromCell, int toCell) {
+            animate(box, toCell, null);
+        }
+
+        @Override
+        public void playerMoved(World.Direction direction, int pushed) {
+            if (pushed != Board.MOVE_BLOCKED) {
+                animate(player, session.getBoard().getPlayerCell(), playerMovedCallback);
+            }
+        }
+
+        @Override
+        public void playerStopped() {
+        }
+
+        @Override
+        public void boxSelected(int cell, boolean selected) {
+        }
+    };
+
+    private MoveAllocationCheck() {
+        Tween.registerAccessor(Sprite.class, new SpriteAccessor());
+        Tween.ensurePoolCapacity(1 + Board.MAX_BOXES_IN_ROW_PUSH);
+
+        session = new Session(new PreparedLevel("room", SyntheticLevels.create(SIZE, BOXES_COUNT)), hudText, view);
+
+        Random random = new Random(1);
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = Board.DIRECTIONS[random.nextInt(Board.DIRECTIONS.length)];
+        }
+        for (int i = 0; i < clicks.length; i++) {
+            clicks[i] = 1 + random.nextInt(SIZE - 2);
+        }
+    }
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (! threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation counter isn't supported by this JVM");
+            System.exit(2);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        MoveAllocationCheck check = new MoveAllocationCheck();
+
+        // Same moves every round, so tables are already grown after warm-up
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            check.round();
+        }
+
+        // Replay keeps growing, make room for the measured rounds
+        int replaySize = check.session.getReplay().getSize();
+        check.round();
+        int roundOps = check.session.getReplay().getSize() - replaySize;
+        check.session.getReplay().ensureCapacity(replaySize + roundOps * (ROUNDS + 2));
+
+        long baseline = threads.getThreadAllocatedBytes(threadId);
+        baseline = threads.getThreadAllocatedBytes(threadId) - baseline;
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int made = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            made += check.round();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - baseline;
+
+        System.out.println(made + " moves, " + check.hudChars + " HUD chars, " + allocated + " bytes allocated");
+        System.exit(allocated == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return number of made moves, level is restarted after them.
+     */
+    private int round() {
+        int made = 0;
+
+        for (int i = 0; i < moves.length; i++) {
+            int steps = session.getSteps();
+
+            session.tryMovePlayer(moves[i]);
+            // Pressed again during the move, goes to the input buffer
+            if (i % 4 == 0) {
+                session.tryMovePlayer(moves[i]);
+            }
+            playUntilIdle();
+
+            made += session.getSteps() - steps;
+        }
+
+        for (int i = 0; i < clicks.length; i += 2) {
+            int steps = session.getSteps();
+            Board board = session.getBoard();
+
+            // Every other click selects a box first, so it's dragged
+            if (i % 4 == 0) {
+                int boxCell = board.nextBoxCell(0);
+                session.tileClicked(board.tileX(boxCell), board.tileY(boxCell));
+            }
+            session.tileClicked(clicks[i], clicks[i + 1]);
+            playUntilIdle();
+
+            made += session.getSteps() - steps;
+        }
+
+        for (int i = 0; i < moves.length / 2 && session.getSteps() > 0; i++) {
+            session.undo();
+            playUntilIdle();
+        }
+        for (int i = 0; i < moves.length / 4; i++) {
+            session.redo();
+            playUntilIdle();
+        }
+
+        session.restart();
+        frame();
+
+        return made;
+    }
+
+    private void playUntilIdle() {
+        do {
+            frame();
+        } while (! session.isIdle() || tweens.size() > 0);
+    }
+
+    private void frame() {
+        session.update(FRAME_TIME);
+        tweens.update(FRAME_TIME);
+        session.postUpdate();
+
+        if (hudText.isChanged()) {
+            hudChars += hudText.getText().length();
+        }
+    }
+
+    private void animate(Sprite sprite, int cell, TweenCallback callback) {
+        Board board = session.getBoard();
+
+        Tween.to(sprite, XY, MOVE_DURATION)
+                .target(board.tileX(cell), board.tileY(cell))
+                .setCallback(callback)
+                .ease(TweenEquations.easeNone)
+                .start(tweens);
+    }
+
+    private static class Sprite {
+        float x;
+        float y;
+    }
+
+    private static class SpriteAccessor implements TweenAccessor<Sprite> {
+
+        @Override
+        public int getValues(Sprite sprite, int type, float[] values) {
+            values[0] = sprite.x;
+            values[1] = sprite.y;
+            return 2;
+        }
+
+        @Override
+        public void setValues(Sprite sprite, int type, float[] values) {
+            sprite.x = values[0];
+            sprite.y = values[1];
+        }
+    }
+}
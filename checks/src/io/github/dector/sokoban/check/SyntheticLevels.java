@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.check;
+
+import io.github.dector.sokoban.level.CompiledLevel;
+
+/**
+ * Generated rooms for checks and benchmarks.
+ *
+ * Square room surrounded by walls. Player stands in the top left corner with the first box to his right
+ * and the first goal right behind it. Other boxes and goals are spread over the room.
+ */
+public class SyntheticLevels {
+
+    // Tile ids as in assets/tiles.png
+    private static final int WALL_ID = 1;
+    private static final int FLOOR_ID = 2;
+
+    private static final int TILE_SIZE = 32;
+
+    public static CompiledLevel create(int size, int boxesCount) {
+        if (size < 5) {
+            throw new IllegalArgumentException("Level is too small: " + size);
+        }
+
+        byte[] tiles = new byte[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean border = x == 0 || y == 0 || x == size - 1 || y == size - 1;
+                tiles[y * size + x] = (byte) (border ? WALL_ID : FLOOR_ID);
+            }
+        }
+
+        int[] boxes = new int[boxesCount];
+        int[] holders = new int[boxesCount];
+
+        if (boxesCount > 0) {
+            boxes[0] = size + 2;
+            holders[0] = size + 3;
+        }
+
+        // Box and goal pairs stacked vertically every second column, starting from the third row
+        int placed = 1;
+        for (int y = 3; y + 1 < size - 1 && placed < boxesCount; y += 3) {
+            for (int x = 1; x < size - 1 && placed < boxesCount; x += 2) {
+                boxes[placed] = y * size + x;
+                holders[placed] = (y + 1) * size + x;
+                placed++;
+            }
+        }
+        if (placed < boxesCount) {
+            throw new IllegalArgumentException(boxesCount + " boxes don't fit into " + size + "x" + size);
+        }
+
+        return new CompiledLevel(0, size, size, tiles, size + 1, boxes, holders);
+    }
+
+    /**
+     * @return level in the same TMX form as levels in assets/levels.
+     */
+    public static String toTmx(CompiledLevel level) {
+        int width = level.getWidth();
+        int height = level.getHeight();
+
+        StringBuilder tmx = new StringBuilder(width * height * 2 + 1024);
+        tmx.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        tmx.append(String.format("<map version=\"1.0\" orientation=\"orthogonal\" width=\"%d\" height=\"%d\" "
+                + "tilewidth=\"%d\" tileheight=\"%d\">\n", width, height, TILE_SIZE, TILE_SIZE));
+        tmx.append(String.format(" <layer name=\"Background\" width=\"%d\" height=\"%d\">\n", width, height));
+        tmx.append("  <data encoding=\"csv\">\n");
+        tmx.append(level.toCsv().replace("\n", ",\n"));
+        tmx.append("\n</data>\n </layer>\n");
+        tmx.append(String.format(" <objectgroup name=\"Objects\" width=\"%d\" height=\"%d\">\n", width, height));
+        appendObject(tmx, "Player", level.getPlayer(), width);
+        for (int i = 0; i < level.getBoxesCount(); i++) {
+            appendObject(tmx, "Box", level.getBox(i), width);
+        }
+        for (int i = 0; i < level.getHoldersCount(); i++) {
+            appendObject(tmx, "Holder", level.getHolder(i), width);
+        }
+        tmx.append(" </objectgroup>\n</map>\n");
+
+        return tmx.toString();
+    }
+
+    private static void appendObject(StringBuilder tmx, String name, int tile, int width) {
+        // Tile objects are anchored by their bottom left corner
+        tmx.append(String.format("  <object name=\"%s\" x=\"%d\" y=\"%d\"/>\n",
+                name, tile % width * TILE_SIZE, (tile / width + 1) * TILE_SIZE));
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import io.github.dector.sokoban.util.Bits;
+
+/**
+ * Game rules without any rendering.
+ *
+ * Cells are addressed by a flat index. The grid is surrounded by a border of walls,
+ * so neighbour lookups never need bounds checks.
+ *
+ * Walls and goals are in shared {@link LevelData}, board owns only boxes and player. Boxes are
+ * copied on write, so copies and snapshots cost nothing until one of them is changed.
+ */
+public class Board {
+
+    public static final int MAX_BOXES_IN_ROW_PUSH = 1;
+
+    public static final int MOVE_BLOCKED = -1;
+
+    public static final World.Direction[] DIRECTIONS = World.Direction.values();
+
+    private final LevelData data;
+    private final Zobrist zobrist;
+
+    private long[] boxes;
+    // Boxes array is referenced by a copy or a snapshot too and must be cloned before changing
+    private boolean boxesShared;
+
+    private int playerCell;
+
+    private int boxesCount;
+    // Updated on every push, so win check doesn't need to scan goals
+    private int boxesOnGoals;
+
+    // Zobrist hash of box positions, updated on every box move
+    private long boxesHash;
+
+    // Changed when boxes move or player is teleported, plain steps keep player in his region
+    private int topologyVersion;
+
+    // Player region, computed on demand
+    private Reachability region;
+
+    public Board(LevelData data) {
+        this.data = data;
+        zobrist = data.getZobrist();
+
+        boxes = Bits.create(data.getCellsCount());
+    }
+
+    public Board(Board board) {
+        data = board.data;
+        zobrist = board.zobrist;
+
+        boxes = board.boxes;
+        boxesShared = true;
+        board.boxesShared = true;
+
+        playerCell = board.playerCell;
+
+        boxesCount = board.boxesCount;
+        boxesOnGoals = board.boxesOnGoals;
+        boxesHash = board.boxesHash;
+    }
+
+    public LevelData getLevelData() {
+        return data;
+    }
+
+    public int getWidth() {
+        return data.getWidth();
+    }
+
+    public int getHeight() {
+        return data.getHeight();
+    }
+
+    public int getCellsCount() {
+        return data.getCellsCount();
+    }
+
+    public int cellOf(int tileX, int tileY) {
+        return data.cellOf(tileX, tileY);
+    }
+
+    public int tileX(int cell) {
+        return data.tileX(cell);
+    }
+
+    public int tileY(int cell) {
+        return data.tileY(cell);
+    }
+
+    public boolean isInside(int tileX, int tileY) {
+        return 0 <= tileX && tileX < data.getWidth()
+                && 0 <= tileY && tileY < data.getHeight();
+    }
+
+    public int offset(World.Direction direction) {
+        return data.offset(direction);
+    }
+
+    public void addBox(int tileX, int tileY) {
+        int cell = cellOf(tileX, tileY);
+
+        if (! Bits.get(boxes, cell)) {
+            ownBoxes();
+            Bits.set(boxes, cell);
+            boxesCount++;
+            boxesHash ^= zobrist.box(cell);
+            topologyVersion++;
+
+            if (data.isGoal(cell)) {
+                boxesOnGoals++;
+            }
+        }
+    }
+
+    public void setPlayer(int tileX, int tileY) {
+        setPlayerCell(cellOf(tileX, tileY));
+    }
+
+    public int getPlayerCell() {
+        return playerCell;
+    }
+
+    /**
+     * Teleports player, unlike {@link #move(World.Direction)} it may leave his region.
+     */
+    public void setPlayerCell(int cell) {
+        playerCell = cell;
+        topologyVersion++;
+    }
+
+    public boolean isWall(int cell) {
+        return data.isWall(cell);
+    }
+
+    public boolean isGoal(int cell) {
+        return data.isGoal(cell);
+    }
+
+    public boolean hasBox(int cell) {
+        return Bits.get(boxes, cell);
+    }
+
+    public boolean isFree(int cell) {
+        return ! data.isWall(cell) && ! Bits.get(boxes, cell);
+    }
+
+    /**
+     * @return first cell with a box starting from {@code fromCell} (inclusive) or -1.
+     */
+    public int nextBoxCell(int fromCell) {
+        return Bits.nextSetBit(boxes, fromCell);
+    }
+
+    public int getBoxesCount() {
+        return boxesCount;
+    }
+
+    public int getGoalsCount() {
+        return data.getGoalsCount();
+    }
+
+    public int getBoxesOnGoalsCount() {
+        return boxesOnGoals;
+    }
+
+    public int getTopologyVersion() {
+        return topologyVersion;
+    }
+
+    /**
+     * @return cells player can walk to, shared and updated only when topology changes.
+     */
+    public Reachability getReachability() {
+        if (region == null) {
+            region = new Reachability();
+        }
+
+        region.update(this);
+        return region;
+    }
+
+    public Zobrist getZobrist() {
+        return zobrist;
+    }
+
+    public long getBoxesHash() {
+        return boxesHash;
+    }
+
+    /**
+     * Hash of box positions and the region player can walk in. Positions differing only by
+     * player location inside his region are the same.
+     *
+     * Region is recomputed only after boxes were moved.
+     *
+     * @see #getReachability()
+     */
+    public long getPositionHash() {
+        return getPositionHash(getReachability());
+    }
+
+    /**
+     * @param reachability already computed for this board.
+     */
+    public long getPositionHash(Reachability reachability) {
+        return boxesHash ^ zobrist.player(reachability.getNormalizedCell());
+    }
+
+    public boolean isSolved() {
+        return boxesOnGoals == data.getGoalsCount();
+    }
+
+    public boolean canMove(World.Direction direction) {
+        return countPushed(direction) != MOVE_BLOCKED;
+    }
+
+    /**
+     * Moves player and pushes boxes in front of him.
+     *
+     * @return number of pushed boxes or {@link #MOVE_BLOCKED} if nothing was changed.
+     */
+    public int move(World.Direction direction) {
+        int pushed = countPushed(direction);
+
+        if (pushed != MOVE_BLOCKED) {
+            int offset = data.offset(direction);
+            int nextCell = playerCell + offset;
+
+            if (pushed > 0) {
+                // Shifting a row of boxes by one cell only changes its ends
+                moveBox(nextCell, nextCell + pushed * offset);
+            }
+
+            playerCell = nextCell;
+        }
+
+        return pushed;
+    }
+
+    /**
+     * Reverts {@link #move(World.Direction)} that returned {@code pushed}.
+     */
+    public void undoMove(World.Direction direction, int pushed) {
+        int offset = data.offset(direction);
+
+        if (pushed > 0) {
+            moveBox(playerCell + pushed * offset, playerCell);
+        }
+
+        playerCell -= offset;
+    }
+
+    private void moveBox(int fromCell, int toCell) {
+        ownBoxes();
+        Bits.clear(boxes, fromCell);
+        Bits.set(boxes, toCell);
+        boxesHash ^= zobrist.box(fromCell) ^ zobrist.box(toCell);
+        topologyVersion++;
+
+        if (data.isGoal(fromCell)) {
+            boxesOnGoals--;
+        }
+        if (data.isGoal(toCell)) {
+            boxesOnGoals++;
+        }
+    }
+
+    private void ownBoxes() {
+        if (boxesShared) {
+            boxes = boxes.clone();
+            boxesShared = false;
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public void restore(Snapshot snapshot) {
+        if (boxesShared) {
+            boxes = snapshot.boxes;
+        } else {
+            // Own array is kept, so the next push after restart doesn't copy it again
+            System.arraycopy(snapshot.boxes, 0, boxes, 0, boxes.length);
+        }
+        playerCell = snapshot.playerCell;
+        boxesOnGoals = snapshot.boxesOnGoals;
+        boxesHash = snapshot.boxesHash;
+        topologyVersion++;
+    }
+
+    private int countPushed(World.Direction direction) {
+        int offset = data.offset(direction);
+        int cell = playerCell + offset;
+        int pushed = 0;
+
+        while (Bits.get(boxes, cell)) {
+            pushed++;
+
+            if (pushed > MAX_BOXES_IN_ROW_PUSH) {
+                return MOVE_BLOCKED;
+            }
+
+            cell += offset;
+        }
+
+        if (data.isWall(cell)) {
+            return MOVE_BLOCKED;
+        }
+
+        return pushed;
+    }
+
+    /**
+     * Immutable copy of boxes and player position.
+     */
+    public static class Snapshot {
+
+        private final long[] boxes;
+        private final int playerCell;
+        private final int boxesOnGoals;
+        private final long boxesHash;
+
+        private Snapshot(Board board) {
+            boxes = board.boxes;
+            board.boxesShared = true;
+            playerCell = board.playerCell;
+            boxesOnGoals = board.boxesOnGoals;
+            boxesHash = board.boxesHash;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import io.github.dector.sokoban.util.IntIntMap;
+
+import java.util.Arrays;
+
+/**
+ * Map from board cell to box id.
+ *
+ * Dense index is an array over all cells, sparse one is a hash map sized by boxes count.
+ * Big maps with few boxes get the sparse one, so memory doesn't grow with the map.
+ */
+public abstract class BoxIndex {
+
+    public static final int NO_BOX = -1;
+
+    // Dense index costs 4 bytes per cell, sparse one about 36 bytes per box
+    private static final int SPARSE_MIN_CELLS_PER_BOX = 32;
+
+    public static BoxIndex create(int cellsCount, int boxesCount) {
+        if ((long) boxesCount * SPARSE_MIN_CELLS_PER_BOX < cellsCount) {
+            return new Sparse(boxesCount);
+        } else {
+            return new Dense(cellsCount);
+        }
+    }
+
+    /**
+     * @return box id or {@link #NO_BOX}.
+     */
+    public abstract int get(int cell);
+
+    public abstract void put(int cell, int id);
+
+    public abstract void remove(int cell);
+
+    public abstract void clear();
+
+    public void move(int fromCell, int toCell) {
+        int id = get(fromCell);
+
+        remove(fromCell);
+        put(toCell, id);
+    }
+
+    static class Dense extends BoxIndex {
+
+        private final int[] ids;
+
+        Dense(int cellsCount) {
+            ids = new int[cellsCount];
+            clear();
+        }
+
+        @Override
+        public int get(int cell) {
+            return ids[cell];
+        }
+
+        @Override
+        public void put(int cell, int id) {
+            ids[cell] = id;
+        }
+
+        @Override
+        public void remove(int cell) {
+            ids[cell] = NO_BOX;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(ids, NO_BOX);
+        }
+    }
+
+    /**
+     * Never grows, boxes count doesn't change during the game.
+     */
+    static class Sparse extends BoxIndex {
+
+        private final IntIntMap ids;
+
+        Sparse(int boxesCount) {
+            // Map grows when half full, so it's made big enough right away
+            ids = new IntIntMap(Integer.highestOneBit(Math.max(1, boxesCount)) * 4);
+        }
+
+        @Override
+        public int get(int cell) {
+            return ids.get(cell, NO_BOX);
+        }
+
+        @Override
+        public void put(int cell, int id) {
+            ids.put(cell, id);
+        }
+
+        @Override
+        public void remove(int cell) {
+            ids.remove(cell);
+        }
+
+        @Override
+        public void clear() {
+            ids.clear();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import org.flixel.FlxBasic;
+import org.flixel.FlxCamera;
+import org.flixel.FlxG;
+import org.flixel.FlxGroup;
+import org.flixel.FlxObject;
+import org.flixel.FlxTilemap;
+
+/**
+ * Level background split into square chunks of {@link #CHUNK_TILES} tiles, each with its own tilemap
+ * and static sprites laying on it.
+ *
+ * Only chunks seen by the camera are updated and drawn, and only they are visited, so frame time
+ * doesn't depend on level size.
+ */
+public class ChunkedTilemap extends FlxBasic {
+
+    public static final int CHUNK_TILES = 32;
+
+    private final int chunkSize;
+
+    private final int chunksX;
+    private final int chunksY;
+    // Row by row, created on demand, chunks without tiles and sprites stay null
+    private final FlxGroup[] chunks;
+
+    // Visible chunks range, inclusive
+    private int fromChunkX;
+    private int fromChunkY;
+    private int toChunkX = -1;
+    private int toChunkY = -1;
+
+    public ChunkedTilemap(PreparedLevel level, String tilesGraphic, int tileSize, int startIndex) {
+        chunkSize = CHUNK_TILES * tileSize;
+
+        chunksX = level.getChunksX();
+        chunksY = level.getChunksY();
+        chunks = new FlxGroup[chunksX * chunksY];
+
+        for (int chunkY = 0; chunkY < chunksY; chunkY++) {
+            for (int chunkX = 0; chunkX < chunksX; chunkX++) {
+                String csv = level.getChunkCsv(chunkX, chunkY);
+
+                if (csv != null) {
+                    FlxTilemap tilemap = new FlxTilemap();
+                    tilemap.loadMap(csv, tilesGraphic, tileSize, tileSize, FlxTilemap.OFF, startIndex);
+                    tilemap.x = chunkX * chunkSize;
+                    tilemap.y = chunkY * chunkSize;
+
+                    chunkAt(chunkX, chunkY).add(tilemap);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds sprite that never moves, it's drawn over tiles of the chunk it starts in.
+     */
+    public void addStatic(FlxObject object) {
+        int chunkX = Math.max(0, Math.min((int) object.x / chunkSize, chunksX - 1));
+        int chunkY = Math.max(0, Math.min((int) object.y / chunkSize, chunksY - 1));
+
+        chunkAt(chunkX, chunkY).add(object);
+    }
+
+    @Override
+    public void update() {
+        updateVisibleRange(FlxG.camera);
+
+        for (int chunkY = fromChunkY; chunkY <= toChunkY; chunkY++) {
+            for (int chunkX = fromChunkX; chunkX <= toChunkX; chunkX++) {
+                FlxGroup chunk = chunks[chunkY * chunksX + chunkX];
+
+                if (chunk != null) {
+                    chunk.update();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void draw() {
+        // Camera has followed its target since update
+        updateVisibleRange(FlxG.camera);
+
+        for (int chunkY = fromChunkY; chunkY <= toChunkY; chunkY++) {
+            for (int chunkX = fromChunkX; chunkX <= toChunkX; chunkX++) {
+                FlxGroup chunk = chunks[chunkY * chunksX + chunkX];
+
+                if (chunk != null) {
+                    chunk.draw();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                chunks[i].destroy();
+                chunks[i] = null;
+            }
+        }
+
+        super.destroy();
+    }
+
+    private FlxGroup chunkAt(int chunkX, int chunkY) {
+        int i = chunkY * chunksX + chunkX;
+
+        if (chunks[i] == null) {
+            chunks[i] = new FlxGroup();
+        }
+
+        return chunks[i];
+    }
+
+    private void updateVisibleRange(FlxCamera camera) {
+        float left = camera.scroll.x;
+        float top = camera.scroll.y;
+
+        fromChunkX = Math.max(0, (int) Math.floor(left / chunkSize));
+        fromChunkY = Math.max(0, (int) Math.floor(top / chunkSize));
+        toChunkX = Math.min(chunksX - 1, (int) Math.floor((left + camera.width) / chunkSize));
+        toChunkY = Math.min(chunksY - 1, (int) Math.floor((top + camera.height) / chunkSize));
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Level in compact binary form.
+ *
+ * Layout: header (magic, version, source hash, size, player, objects count),
+ * one byte per tile, then box and holder positions as tile indices.
+ */
+public class CompiledLevel {
+
+    private static final int MAGIC = 0x534b424c;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8 * 4;
+
+    public static final int NO_PLAYER = -1;
+
+    // Cells outside of the level
+    public static final int EMPTY_TILE = 0;
+
+    private final int sourceHash;
+
+    private final int width;
+    private final int height;
+    private final byte[] tiles;
+
+    private final int player;
+    private final int[] boxes;
+    private final int[] holders;
+
+    public CompiledLevel(int sourceHash, int width, int height, byte[] tiles, int player, int[] boxes, int[] holders) {
+        this.sourceHash = sourceHash;
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+        this.player = player;
+        this.boxes = boxes;
+        this.holders = holders;
+    }
+
+    public int getSourceHash() {
+        return sourceHash;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTile(int tileX, int tileY) {
+        return tiles[tileY * width + tileX] & 0xff;
+    }
+
+    /**
+     * @return player position as tile index ({@code y * width + x}) or {@link #NO_PLAYER}.
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    public int getBoxesCount() {
+        return boxes.length;
+    }
+
+    public int getBox(int i) {
+        return boxes[i];
+    }
+
+    public int getHoldersCount() {
+        return holders.length;
+    }
+
+    public int getHolder(int i) {
+        return holders[i];
+    }
+
+    /**
+     * @return interned walls and goals, shared with other boards of the same level.
+     */
+    public LevelData toLevelData() {
+        LevelData.Builder builder = new LevelData.Builder(width, height);
+
+        for (int i = 0; i < tiles.length; i++) {
+            if (World.Tile.isSolid(tiles[i] & 0xff)) {
+                builder.setWall(i % width, i / width);
+            }
+        }
+        for (int holder : holders) {
+            builder.addGoal(holder % width, holder / width);
+        }
+
+        return builder.build();
+    }
+
+    public Board toBoard() {
+        Board board = new Board(toLevelData());
+
+        for (int box : boxes) {
+            board.addBox(box % width, box / width);
+        }
+        if (player != NO_PLAYER) {
+            board.setPlayer(player % width, player / width);
+        }
+
+        return board;
+    }
+
+    /**
+     * @return tiles in format accepted by {@code FlxTilemap.loadMap()}.
+     */
+    public String toCsv() {
+        return toCsv(0, 0, width, height);
+    }
+
+    /**
+     * @return tiles of the rectangle in format accepted by {@code FlxTilemap.loadMap()}.
+     */
+    public String toCsv(int fromX, int fromY, int regionWidth, int regionHeight) {
+        StringBuilder csv = new StringBuilder(regionWidth * regionHeight * 3);
+
+        for (int y = fromY; y < fromY + regionHeight; y++) {
+            if (y > fromY) {
+                csv.append('\n');
+            }
+
+            for (int x = fromX; x < fromX + regionWidth; x++) {
+                if (x > fromX) {
+                    csv.append(',');
+                }
+
+                csv.append(getTile(x, y));
+            }
+        }
+
+        return csv.toString();
+    }
+
+    public boolean isEmpty(int fromX, int fromY, int regionWidth, int regionHeight) {
+        for (int y = fromY; y < fromY + regionHeight; y++) {
+            for (int x = fromX; x < fromX + regionWidth; x++) {
+                if (getTile(x, y) != EMPTY_TILE) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public void write(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(getByteSize());
+        write(buffer);
+        buffer.flip();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    int getByteSize() {
+        return HEADER_SIZE + tiles.length + (boxes.length + holders.length) * 4;
+    }
+
+    void write(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(sourceHash);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(player);
+        buffer.putInt(boxes.length);
+        buffer.putInt(holders.length);
+        buffer.put(tiles);
+        for (int box : boxes) {
+            buffer.putInt(box);
+        }
+        for (int holder : holders) {
+            buffer.putInt(holder);
+        }
+    }
+
+    public static CompiledLevel read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+            buffer.flip();
+
+            return read(buffer);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static CompiledLevel read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE
+                || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION) {
+            throw new IOException("Not a compiled level");
+        }
+
+        int sourceHash = buffer.getInt();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int player = buffer.getInt();
+        int boxesCount = buffer.getInt();
+        int holdersCount = buffer.getInt();
+
+        if (buffer.remaining() != width * height + (boxesCount + holdersCount) * 4) {
+            throw new IOException("Corrupted compiled level");
+        }
+
+        byte[] tiles = new byte[width * height];
+        buffer.get(tiles);
+
+        int[] boxes = new int[boxesCount];
+        for (int i = 0; i < boxesCount; i++) {
+            boxes[i] = buffer.getInt();
+        }
+
+        int[] holders = new int[holdersCount];
+        for (int i = 0; i < holdersCount; i++) {
+            holders[i] = buffer.getInt();
+        }
+
+        return new CompiledLevel(sourceHash, width, height, tiles, player, boxes, holders);
+    }
+}
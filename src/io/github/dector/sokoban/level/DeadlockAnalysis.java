@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import io.github.dector.sokoban.util.Bits;
+
+/**
+ * Positions from which level can't be solved anymore.
+ *
+ * Dead squares are cells from which a box can't be pushed to any goal. They are found once per level
+ * by pulling boxes backwards from goals. Freezes are 2x2 squares completely filled with walls and boxes
+ * where at least one box isn't on a goal. They are looked up in a table by the 3x3 neighbourhood of the pushed box.
+ *
+ * Level readers reject levels where boxes count differs from goals count, so every box has to end up on a goal
+ * and a single stuck box is enough for a deadlock.
+ */
+public class DeadlockAnalysis {
+
+    // Neighbour classes, two bits each
+    private static final int FREE = 0;
+    private static final int WALL = 1;
+    private static final int BOX = 2;
+    private static final int BOX_ON_GOAL = 3;
+
+    private static final int NEIGHBOURS_COUNT = 8;
+
+    // Neighbours of each 2x2 square around the center, indices are row by row skipping the center:
+    // 0 1 2
+    // 3 . 4
+    // 5 6 7
+    private static final int[][] SQUARES = {
+            { 0, 1, 3 },
+            { 1, 2, 4 },
+            { 3, 5, 6 },
+            { 4, 6, 7 }
+    };
+
+    // Indexed by neighbour classes and the center goal flag in the lowest bit
+    private static final long[] FREEZES = Bits.create(1 << (2 * NEIGHBOURS_COUNT + 1));
+
+    static {
+        for (int pattern = 0; pattern < 1 << (2 * NEIGHBOURS_COUNT + 1); pattern++) {
+            boolean centerOnGoal = (pattern & 1) != 0;
+
+            for (int[] square : SQUARES) {
+                boolean filled = true;
+                boolean onGoals = centerOnGoal;
+
+                for (int neighbour : square) {
+                    int type = (pattern >>> (1 + 2 * neighbour)) & 3;
+
+                    filled &= type != FREE;
+                    onGoals &= type != BOX;
+                }
+
+                if (filled && ! onGoals) {
+                    Bits.set(FREEZES, pattern);
+                    break;
+                }
+            }
+        }
+    }
+
+    private final long[] deadSquares;
+
+    // Cell offsets of the neighbours
+    private final int[] neighbours;
+
+    /**
+     * Use {@link LevelData#getDeadlockAnalysis()}, it's shared by all boards of the level.
+     */
+    DeadlockAnalysis(LevelData level) {
+        deadSquares = computeDeadSquares(level);
+
+        int up = level.offset(World.Direction.UP);
+        int down = level.offset(World.Direction.DOWN);
+        int left = level.offset(World.Direction.LEFT);
+        int right = level.offset(World.Direction.RIGHT);
+
+        neighbours = new int[] {
+                up + left, up, up + right,
+                left, right,
+                down + left, down, down + right
+        };
+    }
+
+    public boolean isDeadSquare(int cell) {
+        return Bits.get(deadSquares, cell);
+    }
+
+    /**
+     * @param boxCell cell with a box, usually the one that was just pushed.
+     */
+    public boolean isFrozen(Board board, int boxCell) {
+        int pattern = board.isGoal(boxCell) ? 1 : 0;
+
+        for (int i = 0; i < NEIGHBOURS_COUNT; i++) {
+            int cell = boxCell + neighbours[i];
+
+            int type;
+            if (board.isWall(cell)) {
+                type = WALL;
+            } else if (board.hasBox(cell)) {
+                type = board.isGoal(cell) ? BOX_ON_GOAL : BOX;
+            } else {
+                type = FREE;
+            }
+
+            pattern |= type << (1 + 2 * i);
+        }
+
+        return Bits.get(FREEZES, pattern);
+    }
+
+    /**
+     * Check for the box that was just pushed. Pushes can't resolve a deadlock, only undo can.
+     */
+    public boolean isDeadlock(Board board, int boxCell) {
+        return isDeadSquare(boxCell) || isFrozen(board, boxCell);
+    }
+
+    /**
+     * Checks every box, for positions reached other way than a push.
+     */
+    public boolean isDeadlocked(Board board) {
+        for (int cell = board.nextBoxCell(0); cell >= 0; cell = board.nextBoxCell(cell + 1)) {
+            if (isDeadlock(board, cell)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static long[] computeDeadSquares(LevelData level) {
+        int cellsCount = level.getCellsCount();
+
+        long[] alive = Bits.create(cellsCount);
+        int[] queue = new int[cellsCount];
+        int head = 0;
+        int tail = 0;
+
+        for (int cell = 0; cell < cellsCount; cell++) {
+            if (level.isGoal(cell) && ! level.isWall(cell)) {
+                Bits.set(alive, cell);
+                queue[tail++] = cell;
+            }
+        }
+
+        // Box can get to a cell if it can be pulled there from a goal
+        while (head < tail) {
+            int cell = queue[head++];
+
+            for (World.Direction direction : Board.DIRECTIONS) {
+                int offset = level.offset(direction);
+                int fromCell = cell - offset;
+                int standCell = fromCell - offset;
+
+                if (! Bits.get(alive, fromCell)
+                        && ! level.isWall(fromCell)
+                        && ! level.isWall(standCell)) {
+                    Bits.set(alive, fromCell);
+                    queue[tail++] = fromCell;
+                }
+            }
+        }
+
+        long[] dead = Bits.create(cellsCount);
+        for (int cell = 0; cell < cellsCount; cell++) {
+            if (! level.isWall(cell) && ! Bits.get(alive, cell)) {
+                Bits.set(dead, cell);
+            }
+        }
+
+        return dead;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import java.util.Arrays;
+
+/**
+ * First in, first out queue of directions on a ring buffer. Grows when full up to the size limit.
+ */
+public class DirectionQueue {
+
+    private final int limit;
+
+    private World.Direction[] items;
+
+    private int head;
+    private int size;
+
+    public DirectionQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public DirectionQueue(int limit) {
+        this.limit = limit;
+        items = new World.Direction[Math.min(limit, 16)];
+    }
+
+    /**
+     * @return false if queue is full.
+     */
+    public boolean add(World.Direction direction) {
+        if (size == limit) {
+            return false;
+        }
+
+        if (size == items.length) {
+            World.Direction[] grown = new World.Direction[(int) Math.min((long) items.length * 2, limit)];
+
+            for (int i = 0; i < size; i++) {
+                grown[i] = items[(head + i) % items.length];
+            }
+
+            items = grown;
+            head = 0;
+        }
+
+        items[(head + size) % items.length] = direction;
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Replaces the newest direction.
+     *
+     * @return false if queue is empty.
+     */
+    public boolean replaceLast(World.Direction direction) {
+        if (size == 0) {
+            return false;
+        }
+
+        items[(head + size - 1) % items.length] = direction;
+        return true;
+    }
+
+    /**
+     * @return oldest direction or {@code null} if queue is empty.
+     */
+    public World.Direction poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        World.Direction direction = items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        size--;
+
+        return direction;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(items, null);
+        head = 0;
+        size = 0;
+    }
+}
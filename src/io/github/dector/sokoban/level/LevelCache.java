@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import io.github.dector.sokoban.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Keeps compiled copies of TMX levels on disk.
+ *
+ * Cached file is named by the level file and starts with length, modification time and SHA-1 of the TMX source.
+ * Source with the same length and time isn't read at all, otherwise it's recompiled unless the digest matches.
+ * Only the file name is used, so the game finds levels compiled ahead from another working directory.
+ */
+public class LevelCache {
+
+    private static final String EXTENSION = ".lvl";
+
+    private static final int MAGIC = 0x534b4243;
+    private static final int VERSION = 1;
+
+    private static final int DIGEST_SIZE = 20;
+
+    // Magic, version, source length and time, digest
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + DIGEST_SIZE;
+
+    /** Modification time of sources that don't have one, they are always digested. */
+    public static final long UNKNOWN_MODIFIED = 0;
+
+    /**
+     * TMX bytes, read only when the cached copy can't be trusted by length and time.
+     */
+    public interface Source {
+        byte[] readBytes() throws IOException;
+    }
+
+    private final File dir;
+
+    public LevelCache(File dir) {
+        this.dir = dir;
+    }
+
+    public CompiledLevel load(final File tmxFile) throws IOException {
+        return load(tmxFile.getPath(), tmxFile.length(), tmxFile.lastModified(), new Source() {
+            @Override
+            public byte[] readBytes() throws IOException {
+                return TmxLevelReader.readBytes(tmxFile);
+            }
+        });
+    }
+
+    public CompiledLevel load(final byte[] tmxSource, String name) throws IOException {
+        return load(name, tmxSource.length, UNKNOWN_MODIFIED, new Source() {
+            @Override
+            public byte[] readBytes() {
+                return tmxSource;
+            }
+        });
+    }
+
+    /**
+     * @param length source length in bytes.
+     * @param modified source modification time or {@link #UNKNOWN_MODIFIED}.
+     */
+    public CompiledLevel load(String name, long length, long modified, Source source) throws IOException {
+        File cacheFile = new File(dir, new File(name).getName() + EXTENSION);
+        Entry entry = readEntry(cacheFile);
+
+        boolean sameSource = entry != null && entry.sourceLength == length;
+        if (sameSource && modified != UNKNOWN_MODIFIED && entry.sourceModified == modified) {
+            return entry.level;
+        }
+
+        byte[] tmxSource = source.readBytes();
+        byte[] digest = digest(tmxSource);
+
+        if (sameSource && tmxSource.length == length && Arrays.equals(entry.sourceDigest, digest)) {
+            if (entry.sourceModified != modified) {
+                // Touched but not changed, next time the time is enough
+                writeEntry(cacheFile, length, modified, digest, entry.level);
+            }
+
+            return entry.level;
+        }
+
+        CompiledLevel level = TmxLevelReader.read(tmxSource, name);
+        writeEntry(cacheFile, tmxSource.length, modified, digest, level);
+
+        return level;
+    }
+
+    private static byte[] digest(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to support it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return cached level or {@code null} if there is no usable one.
+     */
+    private static Entry readEntry(File cacheFile) {
+        if (! cacheFile.isFile()) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(TmxLevelReader.readBytes(cacheFile));
+
+            if (buffer.remaining() < HEADER_SIZE
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION) {
+                throw new IOException("Not a level cache");
+            }
+
+            Entry entry = new Entry();
+            entry.sourceLength = buffer.getLong();
+            entry.sourceModified = buffer.getLong();
+            entry.sourceDigest = new byte[DIGEST_SIZE];
+            buffer.get(entry.sourceDigest);
+
+            entry.level = CompiledLevel.read(buffer);
+
+            return entry;
+        } catch (IOException e) {
+            Log.d("Broken level cache %s: %s", cacheFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeEntry(File cacheFile, long length, long modified, byte[] digest, CompiledLevel level) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + level.getByteSize());
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(length);
+        buffer.putLong(modified);
+        buffer.put(digest);
+        level.write(buffer);
+
+        try {
+            if (dir.isDirectory() || dir.mkdirs()) {
+                FileOutputStream out = new FileOutputStream(cacheFile);
+                try {
+                    out.write(buffer.array());
+                } finally {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            // Cache is optional, level is loaded anyway
+            Log.d("Can't write level cache %s: %s", cacheFile, e.getMessage());
+        }
+    }
+
+    private static class Entry {
+        long sourceLength;
+        long sourceModified;
+        byte[] sourceDigest;
+        CompiledLevel level;
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import io.github.dector.sokoban.util.Bits;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable part of a level: walls, goals and everything computed from them.
+ *
+ * Instances are interned, so all boards of the same level share one copy whatever thread built it.
+ * Cells are addressed the same way as in {@link Board}.
+ */
+public class LevelData {
+
+    private static final int BORDER = 1;
+
+    // Values are weak too, otherwise they would keep their own keys alive
+    private static final Map<LevelData, WeakReference<LevelData>> interned =
+            new WeakHashMap<LevelData, WeakReference<LevelData>>();
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int cellsCount;
+
+    private final int[] offsets;
+
+    private final long[] walls;
+    private final long[] goals;
+    private final int goalsCount;
+
+    private final int hash;
+
+    // Computed on demand, cells count sized tables aren't needed by every user
+    private Zobrist zobrist;
+    private DeadlockAnalysis deadlocks;
+
+    private LevelData(Builder builder) {
+        width = builder.width;
+        height = builder.height;
+        stride = builder.stride;
+        cellsCount = builder.cellsCount;
+
+        offsets = new int[Board.DIRECTIONS.length];
+        for (World.Direction direction : Board.DIRECTIONS) {
+            offsets[direction.ordinal()] = direction.nextTileX(0) + direction.nextTileY(0) * stride;
+        }
+
+        walls = builder.walls.clone();
+        goals = builder.goals.clone();
+        goalsCount = builder.goalsCount;
+
+        int result = width;
+        result = 31 * result + height;
+        result = 31 * result + Arrays.hashCode(walls);
+        result = 31 * result + Arrays.hashCode(goals);
+        hash = result;
+    }
+
+    /**
+     * @return the shared instance equal to {@code data}.
+     */
+    public static LevelData intern(LevelData data) {
+        synchronized (interned) {
+            WeakReference<LevelData> reference = interned.get(data);
+            LevelData existing = reference != null ? reference.get() : null;
+
+            if (existing != null) {
+                return existing;
+            }
+
+            interned.put(data, new WeakReference<LevelData>(data));
+            return data;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int getCellsCount() {
+        return cellsCount;
+    }
+
+    public int cellOf(int tileX, int tileY) {
+        return (tileY + BORDER) * stride + tileX + BORDER;
+    }
+
+    public int tileX(int cell) {
+        return cell % stride - BORDER;
+    }
+
+    public int tileY(int cell) {
+        return cell / stride - BORDER;
+    }
+
+    public int offset(World.Direction direction) {
+        return offsets[direction.ordinal()];
+    }
+
+    public boolean isWall(int cell) {
+        return Bits.get(walls, cell);
+    }
+
+    public boolean isGoal(int cell) {
+        return Bits.get(goals, cell);
+    }
+
+    public int getGoalsCount() {
+        return goalsCount;
+    }
+
+    public synchronized Zobrist getZobrist() {
+        if (zobrist == null) {
+            zobrist = new Zobrist(cellsCount);
+        }
+
+        return zobrist;
+    }
+
+    public synchronized DeadlockAnalysis getDeadlockAnalysis() {
+        if (deadlocks == null) {
+            deadlocks = new DeadlockAnalysis(this);
+        }
+
+        return deadlocks;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (! (o instanceof LevelData)) return false;
+
+        LevelData other = (LevelData) o;
+        return hash == other.hash
+                && width == other.width
+                && height == other.height
+                && Arrays.equals(walls, other.walls)
+                && Arrays.equals(goals, other.goals);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    public static class Builder {
+
+        private final int width;
+        private final int height;
+        private final int stride;
+        private final int cellsCount;
+
+        private final long[] walls;
+        private final long[] goals;
+        private int goalsCount;
+
+        public Builder(int width, int height) {
+            this.width = width;
+            this.height = height;
+
+            stride = width + 2 * BORDER;
+            cellsCount = stride * (height + 2 * BORDER);
+
+            walls = Bits.create(cellsCount);
+            goals = Bits.create(cellsCount);
+
+            for (int cell = 0; cell < cellsCount; cell++) {
+                int x = cell % stride;
+                int y = cell / stride;
+
+                if (x < BORDER || x >= width + BORDER || y < BORDER || y >= height + BORDER) {
+                    Bits.set(walls, cell);
+                }
+            }
+        }
+
+        public Builder setWall(int tileX, int tileY) {
+            Bits.set(walls, (tileY + BORDER) * stride + tileX + BORDER);
+            return this;
+        }
+
+        public Builder addGoal(int tileX, int tileY) {
+            int cell = (tileY + BORDER) * stride + tileX + BORDER;
+
+            if (! Bits.get(goals, cell)) {
+                Bits.set(goals, cell);
+                goalsCount++;
+            }
+
+            return this;
+        }
+
+        /**
+         * @return interned level data.
+         */
+        public LevelData build() {
+            return intern(new LevelData(this));
+        }
+    }
+}
@@ -29,4 +29,7 @@ public interface LevelEventCallback {
 
     public void onLevelCompleted();
     public void onStepsChanged(int steps);
+    public void onBoxesPlacedChanged(int placed, int total);
+    public void onDeadlockChanged(boolean deadlocked);
+    public void onPositionRepeatedChanged(boolean repeated);
 }
@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Collection of levels in plain text XSB/SOK format.
+ *
+ * File is memory mapped and scanned once for level boundaries, levels are parsed only when requested.
+ * Besides the mapping only the index is kept in memory, two ints per level.
+ */
+public class LevelPack {
+
+    public static final char INDEX_SEPARATOR = '#';
+
+    // Tile ids as in assets/tiles.png
+    private static final byte EMPTY_ID = 0;
+    private static final byte WALL_ID = 1;
+    private static final byte FLOOR_ID = 2;
+
+    private final String name;
+    private final ByteBuffer data;
+
+    // Start and end offsets of each level
+    private int[] bounds = new int[2 * 64];
+    private int levelsCount;
+
+    private LevelPack(String name, ByteBuffer data) {
+        this.name = name;
+        this.data = data;
+
+        index();
+    }
+
+    public static LevelPack open(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Level pack is too big: " + file);
+            }
+
+            // Mapping stays valid after the channel is closed
+            return new LevelPack(file.getPath(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    public int getLevelsCount() {
+        return levelsCount;
+    }
+
+    /**
+     * @return pack path with one-based level number, e.g. {@code levels/pack.xsb#12}.
+     */
+    public String getLevelName(int index) {
+        return name + INDEX_SEPARATOR + (index + 1);
+    }
+
+    /**
+     * Safe to call from different threads.
+     */
+    public CompiledLevel read(int index) throws IOException {
+        if (index < 0 || index >= levelsCount) {
+            throw new IOException("No level " + (index + 1) + " in " + name);
+        }
+
+        int start = bounds[2 * index];
+        int end = bounds[2 * index + 1];
+
+        byte[] source = new byte[end - start];
+        ByteBuffer view = data.duplicate();
+        view.position(start);
+        view.get(source);
+
+        return parse(source, getLevelName(index));
+    }
+
+    private void index() {
+        int limit = data.limit();
+        int levelStart = -1;
+        int levelEnd = -1;
+
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            boolean hasWall = false;
+            boolean hasText = false;
+
+            for (byte c; lineEnd < limit && (c = data.get(lineEnd)) != '\n'; lineEnd++) {
+                if (c == '#') {
+                    hasWall = true;
+                } else if (! isBoardChar(c) && c != '\r') {
+                    hasText = true;
+                }
+            }
+
+            // Titles, comments and empty lines separate levels
+            if (hasWall && ! hasText) {
+                if (levelStart < 0) {
+                    levelStart = lineStart;
+                }
+                levelEnd = lineEnd;
+            } else if (levelStart >= 0) {
+                addLevel(levelStart, levelEnd);
+                levelStart = -1;
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        if (levelStart >= 0) {
+            addLevel(levelStart, levelEnd);
+        }
+    }
+
+    private void addLevel(int start, int end) {
+        if (2 * levelsCount == bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+
+        bounds[2 * levelsCount] = start;
+        bounds[2 * levelsCount + 1] = end;
+        levelsCount++;
+    }
+
+    private static boolean isBoardChar(byte c) {
+        switch (c) {
+            case ' ':
+            case '-':
+            case '_':
+            case '#':
+            case '@':
+            case '+':
+            case '$':
+            case '*':
+            case '.':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static CompiledLevel parse(byte[] source, String name) throws IOException {
+        int width = 0;
+        int height = 0;
+        for (int lineStart = 0; lineStart <= source.length; height++) {
+            int lineEnd = lineEnd(source, lineStart);
+            width = Math.max(width, lineEnd - lineStart);
+            lineStart = nextLine(source, lineEnd);
+        }
+
+        byte[] tiles = new byte[width * height];
+        boolean[] boxes = new boolean[tiles.length];
+        boolean[] holders = new boolean[tiles.length];
+        int boxesCount = 0;
+        int holdersCount = 0;
+        int player = CompiledLevel.NO_PLAYER;
+
+        int lineStart = 0;
+        for (int y = 0; y < height; y++) {
+            int lineEnd = lineEnd(source, lineStart);
+
+            for (int x = 0; x < lineEnd - lineStart; x++) {
+                int tile = y * width + x;
+                byte c = source[lineStart + x];
+
+                tiles[tile] = c == '#' ? WALL_ID : FLOOR_ID;
+
+                if (c == '$' || c == '*') {
+                    boxes[tile] = true;
+                    boxesCount++;
+                }
+                if (c == '.' || c == '*' || c == '+') {
+                    holders[tile] = true;
+                    holdersCount++;
+                }
+                if (c == '@' || c == '+') {
+                    if (player != CompiledLevel.NO_PLAYER) {
+                        throw new IOException("More than one player in " + name);
+                    }
+                    player = tile;
+                }
+            }
+
+            lineStart = nextLine(source, lineEnd);
+        }
+
+        if (player != CompiledLevel.NO_PLAYER) {
+            markOutside(tiles, boxes, holders, width, player);
+        }
+
+        if (boxesCount != holdersCount) {
+            throw new IOException(boxesCount + " boxes for " + holdersCount + " goals in " + name);
+        }
+
+        return new CompiledLevel(TmxLevelReader.hash(source), width, height, tiles, player,
+                indices(boxes, boxesCount), indices(holders, holdersCount));
+    }
+
+    /**
+     * Clears floor the player can never get to, so space around the walls isn't drawn as grass.
+     */
+    private static void markOutside(byte[] tiles, boolean[] boxes, boolean[] holders, int width, int player) {
+        boolean[] inside = new boolean[tiles.length];
+        int[] stack = new int[tiles.length];
+        int size = 0;
+
+        inside[player] = true;
+        stack[size++] = player;
+
+        while (size > 0) {
+            int tile = stack[--size];
+            int x = tile % width;
+
+            for (int i = 0; i < 4; i++) {
+                int next;
+                if (i == 0 && x > 0) {
+                    next = tile - 1;
+                } else if (i == 1 && x < width - 1) {
+                    next = tile + 1;
+                } else if (i == 2) {
+                    next = tile - width;
+                } else if (i == 3) {
+                    next = tile + width;
+                } else {
+                    continue;
+                }
+
+                if (0 <= next && next < tiles.length && ! inside[next] && tiles[next] == FLOOR_ID) {
+                    inside[next] = true;
+                    stack[size++] = next;
+                }
+            }
+        }
+
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] == FLOOR_ID && ! inside[i] && ! boxes[i] && ! holders[i]) {
+                tiles[i] = EMPTY_ID;
+            }
+        }
+    }
+
+    private static int[] indices(boolean[] flags, int count) {
+        int[] indices = new int[count];
+
+        int n = 0;
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i]) {
+                indices[n++] = i;
+            }
+        }
+
+        return indices;
+    }
+
+    private static int lineEnd(byte[] source, int lineStart) {
+        int end = lineStart;
+        while (end < source.length && source[end] != '\n') {
+            end++;
+        }
+        while (end > lineStart && source[end - 1] == '\r') {
+            end--;
+        }
+
+        return end;
+    }
+
+    private static int nextLine(byte[] source, int lineEnd) {
+        while (lineEnd < source.length && source[lineEnd] != '\n') {
+            lineEnd++;
+        }
+
+        return lineEnd + 1;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import java.util.Arrays;
+
+/**
+ * Undo/redo history of player moves.
+ *
+ * Every move takes 4 bits: direction and number of pushed boxes.
+ */
+public class MoveJournal {
+
+    private static final int ENTRY_BITS = 4;
+    private static final int ENTRIES_PER_WORD = 64 / ENTRY_BITS;
+    private static final int ENTRY_MASK = (1 << ENTRY_BITS) - 1;
+
+    private static final int DIRECTION_MASK = 0x3;
+    private static final int PUSHED_SHIFT = 2;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    static {
+        if (Board.MAX_BOXES_IN_ROW_PUSH > (ENTRY_MASK >>> PUSHED_SHIFT)) {
+            throw new IllegalStateException("Journal entry is too small for MAX_BOXES_IN_ROW_PUSH");
+        }
+    }
+
+    private long[] words = new long[INITIAL_CAPACITY / ENTRIES_PER_WORD];
+
+    // Moves available for redo are kept after position
+    private int size;
+    private int position;
+
+    public void record(World.Direction direction, int pushed) {
+        if (position == words.length * ENTRIES_PER_WORD) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+
+        int entry = direction.ordinal() | pushed << PUSHED_SHIFT;
+        int wordIndex = position / ENTRIES_PER_WORD;
+        int shift = (position % ENTRIES_PER_WORD) * ENTRY_BITS;
+
+        words[wordIndex] = (words[wordIndex] & ~((long) ENTRY_MASK << shift)) | (long) entry << shift;
+
+        position++;
+        size = position;
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < size;
+    }
+
+    /**
+     * @return entry of the last move. Use {@link #directionOf(int)} and {@link #pushedOf(int)} to decode it.
+     */
+    public int undo() {
+        position--;
+        return entryAt(position);
+    }
+
+    public int redo() {
+        int entry = entryAt(position);
+        position++;
+        return entry;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void clear() {
+        size = 0;
+        position = 0;
+    }
+
+    public static World.Direction directionOf(int entry) {
+        return Board.DIRECTIONS[entry & DIRECTION_MASK];
+    }
+
+    public static int pushedOf(int entry) {
+        return entry >>> PUSHED_SHIFT;
+    }
+
+    private int entryAt(int index) {
+        long word = words[index / ENTRIES_PER_WORD];
+        return (int) (word >>> (index % ENTRIES_PER_WORD) * ENTRY_BITS) & ENTRY_MASK;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import java.util.Arrays;
+
+/**
+ * Shortest walks that don't push any box.
+ *
+ * Distances are kept for the board position they were computed from. Search stops as soon as the target
+ * is found and continues from there for farther targets, so repeated queries cost only the path length.
+ * Nothing is allocated once buffers are big enough.
+ */
+public class PathFinder {
+
+    public static final int NO_PATH = -1;
+
+    private int[] queue = new int[0];
+    private int[] distances = new int[0];
+    // Cell is visited in the current search if its stamp equals current one
+    private int[] stamps = new int[0];
+    private int stamp;
+
+    private int head;
+    private int tail;
+
+    // Directions of the found path
+    private int[] steps = new int[0];
+
+    // Position distances were computed for
+    private Board board;
+    private int topologyVersion;
+    private int fromCell;
+
+    /**
+     * Appends steps from player to {@code targetCell} to {@code path}.
+     *
+     * @return number of steps or {@link #NO_PATH}.
+     */
+    public int findPath(Board board, int targetCell, DirectionQueue path) {
+        if (! board.getReachability().isReachable(targetCell)) {
+            return NO_PATH;
+        }
+
+        prepare(board);
+
+        while (stamps[targetCell] != stamp && head < tail) {
+            expand(queue[head++]);
+        }
+        if (stamps[targetCell] != stamp) {
+            return NO_PATH;
+        }
+
+        int stepsCount = distances[targetCell];
+        if (steps.length < stepsCount) {
+            steps = new int[Math.max(stepsCount, steps.length * 2)];
+        }
+
+        // Walk back from the target along decreasing distances
+        int cell = targetCell;
+        for (int i = stepsCount - 1; i >= 0; i--) {
+            for (World.Direction direction : Board.DIRECTIONS) {
+                int previous = cell - board.offset(direction);
+
+                if (stamps[previous] == stamp && distances[previous] == i) {
+                    steps[i] = direction.ordinal();
+                    cell = previous;
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < stepsCount; i++) {
+            path.add(Board.DIRECTIONS[steps[i]]);
+        }
+
+        return stepsCount;
+    }
+
+    private void prepare(Board board) {
+        if (this.board == board
+                && topologyVersion == board.getTopologyVersion()
+                && fromCell == board.getPlayerCell()) {
+            return;
+        }
+
+        int cellsCount = board.getCellsCount();
+        if (queue.length < cellsCount) {
+            queue = new int[cellsCount];
+            distances = new int[cellsCount];
+            stamps = new int[cellsCount];
+            stamp = 0;
+        }
+
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+
+        this.board = board;
+        topologyVersion = board.getTopologyVersion();
+        fromCell = board.getPlayerCell();
+
+        head = 0;
+        tail = 0;
+        queue[tail++] = fromCell;
+        stamps[fromCell] = stamp;
+        distances[fromCell] = 0;
+    }
+
+    private void expand(int cell) {
+        for (World.Direction direction : Board.DIRECTIONS) {
+            int next = cell + board.offset(direction);
+
+            if (stamps[next] != stamp && board.isFree(next)) {
+                stamps[next] = stamp;
+                distances[next] = distances[cell] + 1;
+                queue[tail++] = next;
+            }
+        }
+    }
+}
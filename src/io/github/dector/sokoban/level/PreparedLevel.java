@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+/**
+ * Level with everything that doesn't need GL already computed, so it can be prepared on a worker thread.
+ *
+ * Board is handed to the world as is, so prepared level is good for a single {@link World#init(PreparedLevel)}.
+ */
+public class PreparedLevel {
+
+    private final String name;
+    private final CompiledLevel level;
+
+    private final Board board;
+
+    private final int chunksX;
+    private final int chunksY;
+    // Row by row, null for chunks without tiles
+    private final String[] chunkCsvs;
+
+    public PreparedLevel(String name, CompiledLevel level) {
+        this.name = name;
+        this.level = level;
+
+        board = level.toBoard();
+        // Level tables are built lazily, world would otherwise build them on render thread
+        board.getLevelData().getZobrist();
+        board.getLevelData().getDeadlockAnalysis();
+
+        int chunkTiles = ChunkedTilemap.CHUNK_TILES;
+        chunksX = (level.getWidth() + chunkTiles - 1) / chunkTiles;
+        chunksY = (level.getHeight() + chunkTiles - 1) / chunkTiles;
+        chunkCsvs = new String[chunksX * chunksY];
+
+        for (int chunkY = 0; chunkY < chunksY; chunkY++) {
+            for (int chunkX = 0; chunkX < chunksX; chunkX++) {
+                int fromX = chunkX * chunkTiles;
+                int fromY = chunkY * chunkTiles;
+                int width = Math.min(chunkTiles, level.getWidth() - fromX);
+                int height = Math.min(chunkTiles, level.getHeight() - fromY);
+
+                if (! level.isEmpty(fromX, fromY, width, height)) {
+                    chunkCsvs[chunkY * chunksX + chunkX] = level.toCsv(fromX, fromY, width, height);
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CompiledLevel getLevel() {
+        return level;
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    public int getChunksY() {
+        return chunksY;
+    }
+
+    /**
+     * @return tiles of the chunk in format accepted by {@code FlxTilemap.loadMap()} or null if it has none.
+     */
+    public String getChunkCsv(int chunkX, int chunkY) {
+        return chunkCsvs[chunkY * chunksX + chunkX];
+    }
+}
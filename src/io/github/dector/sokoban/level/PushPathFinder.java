@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import java.util.Arrays;
+
+/**
+ * Shortest way (by pushes) to move one box to a target cell, other boxes stay in place.
+ *
+ * Searches over push states: box cell and direction of the push, player standing behind the box.
+ * Sides of the box the player can walk between depend only on the box cell, so they are found once per cell.
+ * Queues and marks are reused between searches.
+ */
+public class PushPathFinder {
+
+    public static final int NO_PATH = -1;
+
+    private static final int SIDES = 4;
+    private static final int NOT_CONNECTED = -1;
+
+    private int[] queue = new int[0];
+    private int[] parents = new int[0];
+    private int[] stamps = new int[0];
+
+    // Component of each side of a box standing at a cell, two bits per side
+    private int[] sideComponents = new int[0];
+    private int[] sideStamps = new int[0];
+    // Components of the sides being computed
+    private final int[] components = new int[SIDES];
+
+    private int[] floodQueue = new int[0];
+    private int[] floodStamps = new int[0];
+    private int floodStamp;
+
+    // Direction of the first step from each cell on the way to the walk target
+    private int[] walkSteps = new int[0];
+
+    private int stamp;
+
+    private int[] pushes = new int[0];
+
+    // Search input
+    private Board board;
+    private int origin;
+
+    /**
+     * Appends walks and pushes moving box from {@code boxCell} to {@code targetCell} to {@code path}.
+     *
+     * @return number of pushes or {@link #NO_PATH}.
+     */
+    public int findPath(Board board, int boxCell, int targetCell, DirectionQueue path) {
+        if (! board.hasBox(boxCell) || board.isWall(targetCell)) {
+            return NO_PATH;
+        }
+        if (boxCell == targetCell) {
+            return 0;
+        }
+
+        prepare(board, boxCell);
+
+        Reachability reachability = board.getReachability();
+        int head = 0;
+        int tail = 0;
+
+        for (World.Direction direction : Board.DIRECTIONS) {
+            int state = boxCell * SIDES + direction.ordinal();
+
+            if (reachability.isReachable(boxCell - board.offset(direction))) {
+                stamps[state] = stamp;
+                parents[state] = -1;
+                queue[tail++] = state;
+            }
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            int cell = state / SIDES;
+            int side = state % SIDES;
+            int next = cell + board.offset(Board.DIRECTIONS[side]);
+
+            if (! isFree(next, cell)) {
+                continue;
+            }
+
+            if (next == targetCell) {
+                return appendMoves(state, path);
+            }
+
+            // Player stands where the box was, on the pushing side of the moved box
+            for (int nextSide = 0; nextSide < SIDES; nextSide++) {
+                int nextState = next * SIDES + nextSide;
+
+                if (stamps[nextState] != stamp && isConnected(next, side, nextSide)) {
+                    stamps[nextState] = stamp;
+                    parents[nextState] = state;
+                    queue[tail++] = nextState;
+                }
+            }
+        }
+
+        return NO_PATH;
+    }
+
+    private void prepare(Board board, int boxCell) {
+        int statesCount = board.getCellsCount() * SIDES;
+        if (queue.length < statesCount) {
+            queue = new int[statesCount];
+            parents = new int[statesCount];
+            stamps = new int[statesCount];
+            sideComponents = new int[board.getCellsCount()];
+            sideStamps = new int[board.getCellsCount()];
+            floodQueue = new int[board.getCellsCount()];
+            floodStamps = new int[board.getCellsCount()];
+            walkSteps = new int[board.getCellsCount()];
+            stamp = 0;
+            floodStamp = 0;
+        }
+
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            Arrays.fill(sideStamps, 0);
+            stamp = 1;
+        }
+
+        this.board = board;
+        origin = boxCell;
+    }
+
+    /**
+     * Searched box is taken off its original cell and placed at {@code boxCell}.
+     */
+    private boolean isFree(int cell, int boxCell) {
+        if (cell == boxCell) {
+            return false;
+        }
+        if (cell == origin) {
+            return true;
+        }
+
+        return board.isFree(cell);
+    }
+
+    private boolean isConnected(int boxCell, int fromSide, int toSide) {
+        if (sideStamps[boxCell] != stamp) {
+            sideComponents[boxCell] = computeSideComponents(boxCell);
+            sideStamps[boxCell] = stamp;
+        }
+
+        int packed = sideComponents[boxCell];
+        int from = (packed >> (fromSide * 8)) & 0xff;
+        int to = (packed >> (toSide * 8)) & 0xff;
+
+        return to != (NOT_CONNECTED & 0xff) && from == to;
+    }
+
+    /**
+     * @return component index per side in bytes, sides blocked by walls or boxes are {@link #NOT_CONNECTED}.
+     */
+    private int computeSideComponents(int boxCell) {
+        Arrays.fill(components, NOT_CONNECTED);
+        int componentsCount = 0;
+
+        for (int side = 0; side < SIDES; side++) {
+            int sideCell = boxCell - board.offset(Board.DIRECTIONS[side]);
+
+            if (components[side] != NOT_CONNECTED || ! isFree(sideCell, boxCell)) {
+                continue;
+            }
+
+            components[side] = componentsCount;
+            floodSides(boxCell, sideCell, side, components, componentsCount);
+            componentsCount++;
+        }
+
+        int packed = 0;
+        for (int side = 0; side < SIDES; side++) {
+            packed |= (components[side] & 0xff) << (side * 8);
+        }
+
+        return packed;
+    }
+
+    /**
+     * Marks sides reachable from {@code start}. Stops as soon as all remaining sides are found.
+     */
+    private void floodSides(int boxCell, int start, int startSide, int[] components, int component) {
+        nextFloodStamp();
+
+        int left = 0;
+        for (int side = startSide + 1; side < SIDES; side++) {
+            int sideCell = boxCell - board.offset(Board.DIRECTIONS[side]);
+
+            if (components[side] == NOT_CONNECTED && isFree(sideCell, boxCell)) {
+                left++;
+            }
+        }
+
+        int head = 0;
+        int tail = 0;
+        floodQueue[tail++] = start;
+        floodStamps[start] = floodStamp;
+
+        while (head < tail && left > 0) {
+            int cell = floodQueue[head++];
+
+            for (World.Direction direction : Board.DIRECTIONS) {
+                int next = cell + board.offset(direction);
+
+                if (floodStamps[next] == floodStamp || ! isFree(next, boxCell)) {
+                    continue;
+                }
+
+                floodStamps[next] = floodStamp;
+                floodQueue[tail++] = next;
+
+                for (int side = startSide + 1; side < SIDES; side++) {
+                    if (components[side] == NOT_CONNECTED
+                            && next == boxCell - board.offset(Board.DIRECTIONS[side])) {
+                        components[side] = component;
+                        left--;
+                    }
+                }
+            }
+        }
+    }
+
+    private int appendMoves(int lastState, DirectionQueue path) {
+        int pushesCount = 0;
+        for (int state = lastState; state >= 0; state = parents[state]) {
+            pushesCount++;
+        }
+
+        if (pushes.length < pushesCount) {
+            pushes = new int[Math.max(pushesCount, pushes.length * 2)];
+        }
+
+        int i = pushesCount;
+        for (int state = lastState; state >= 0; state = parents[state]) {
+            pushes[--i] = state;
+        }
+
+        // Board stays as is: player is tracked here, isFree() treats the box as standing on the pushed cell
+        int playerCell = board.getPlayerCell();
+        for (i = 0; i < pushesCount; i++) {
+            int cell = pushes[i] / SIDES;
+            World.Direction direction = Board.DIRECTIONS[pushes[i] % SIDES];
+
+            int standCell = cell - board.offset(direction);
+            if (playerCell != standCell) {
+                appendWalk(playerCell, standCell, cell, path);
+            }
+
+            path.add(direction);
+            playerCell = cell;
+        }
+
+        return pushesCount;
+    }
+
+    /**
+     * Appends steps from {@code fromCell} to {@code toCell} while the searched box stands at {@code boxCell}.
+     * Floods back from the target, so steps are read in walking order.
+     */
+    private void appendWalk(int fromCell, int toCell, int boxCell, DirectionQueue path) {
+        nextFloodStamp();
+
+        int head = 0;
+        int tail = 0;
+        floodQueue[tail++] = toCell;
+        floodStamps[toCell] = floodStamp;
+
+        while (head < tail && floodStamps[fromCell] != floodStamp) {
+            int cell = floodQueue[head++];
+
+            for (World.Direction direction : Board.DIRECTIONS) {
+                int previous = cell - board.offset(direction);
+
+                if (floodStamps[previous] != floodStamp && isFree(previous, boxCell)) {
+                    floodStamps[previous] = floodStamp;
+                    walkSteps[previous] = direction.ordinal();
+                    floodQueue[tail++] = previous;
+                }
+            }
+        }
+
+        if (floodStamps[fromCell] != floodStamp) {
+            throw new IllegalStateException("Push side " + toCell + " isn't reachable from " + fromCell);
+        }
+
+        for (int cell = fromCell; cell != toCell; ) {
+            World.Direction direction = Board.DIRECTIONS[walkSteps[cell]];
+            path.add(direction);
+            cell += board.offset(direction);
+        }
+    }
+
+    private void nextFloodStamp() {
+        floodStamp++;
+        if (floodStamp == Integer.MAX_VALUE) {
+            Arrays.fill(floodStamps, 0);
+            floodStamp = 1;
+        }
+    }
+}
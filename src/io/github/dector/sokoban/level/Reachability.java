@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import io.github.dector.sokoban.util.Bits;
+
+import java.util.Arrays;
+
+/**
+ * Cells the player can walk to without pushing any box.
+ *
+ * Buffers are reused between calls, so the same instance should be kept for a board.
+ * Nothing is allocated once buffers are big enough.
+ */
+public class Reachability {
+
+    private int[] queue = new int[0];
+    private long[] reached = new long[0];
+
+    private int size;
+    private int normalizedCell;
+
+    // What the region was computed for
+    private Board board;
+    private int topologyVersion;
+
+    /**
+     * Recomputes region only if walls or boxes moved since the last call for this board.
+     */
+    public void update(Board board) {
+        if (this.board != board || topologyVersion != board.getTopologyVersion()) {
+            compute(board);
+        }
+    }
+
+    public void compute(Board board) {
+        int cellsCount = board.getCellsCount();
+        if (queue.length < cellsCount) {
+            queue = new int[cellsCount];
+            reached = Bits.create(cellsCount);
+        } else {
+            Arrays.fill(reached, 0);
+        }
+
+        int start = board.getPlayerCell();
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = start;
+        Bits.set(reached, start);
+        normalizedCell = start;
+
+        while (head < tail) {
+            int cell = queue[head++];
+
+            for (World.Direction direction : Board.DIRECTIONS) {
+                int next = cell + board.offset(direction);
+
+                if (! Bits.get(reached, next) && board.isFree(next)) {
+                    Bits.set(reached, next);
+                    queue[tail++] = next;
+
+                    if (next < normalizedCell) {
+                        normalizedCell = next;
+                    }
+                }
+            }
+        }
+
+        size = tail;
+
+        this.board = board;
+        topologyVersion = board.getTopologyVersion();
+    }
+
+    public boolean isReachable(int cell) {
+        return Bits.get(reached, cell);
+    }
+
+    /**
+     * @return top left reachable cell. Same for every player position inside the region.
+     */
+    public int getNormalizedCell() {
+        return normalizedCell;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,490 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import io.github.dector.sokoban.replay.Replay;
+import io.github.dector.sokoban.util.Log;
+import io.github.dector.sokoban.util.LongIntMap;
+import io.github.dector.sokoban.util.Settings;
+
+/**
+ * Rules of the level being played: moves, undo and redo, walks and drags by click, replay recording and win check.
+ *
+ * Headless, {@link World} shows it with sprites through {@link View}.
+ */
+public class Session {
+
+    /**
+     * Called in the order things happen on the board.
+     */
+    public interface View {
+
+        /**
+         * Called for every box of a push, leading box first, before the player move.
+         */
+        public void boxMoved(int fromCell, int toCell);
+
+        /**
+         * @param pushed number of pushed boxes or {@link Board#MOVE_BLOCKED} if player only turned.
+         */
+        public void playerMoved(World.Direction direction, int pushed);
+
+        /**
+         * Player has nothing more to do after {@link #moveFinished()}.
+         */
+        public void playerStopped();
+
+        public void boxSelected(int cell, boolean selected);
+    }
+
+    private final Board board;
+    private final Board.Snapshot initialState;
+
+    private final MoveJournal journal = new MoveJournal();
+
+    private final PathFinder pathFinder = new PathFinder();
+    private final PushPathFinder pushPathFinder = new PushPathFinder();
+    // Steps of click-to-move walk or box drag, made one by one as player moves finish
+    private final DirectionQueue queuedMoves = new DirectionQueue();
+    // Keys pressed while player was moving
+    private final DirectionQueue bufferedMoves = new DirectionQueue(Math.max(1, Settings.INPUT_BUFFER_DEPTH));
+    private final BoxSelection selection = new BoxSelection();
+
+    private final DeadlockAnalysis deadlocks;
+    private boolean deadlocked;
+
+    // How many times each position was reached by pushes on the current moves path
+    private final LongIntMap positions = new LongIntMap();
+    private boolean positionRepeated;
+
+    private final Replay replay;
+    // Seconds since level start
+    private float time;
+
+    private boolean playerMoving;
+    // Moves are finished right away instead of waiting for moveFinished()
+    private boolean instant;
+    private boolean levelCompleted;
+
+    private int steps;
+
+    // To avoid win condition check on every frame
+    private boolean tickStepsChanged;
+
+    private final LevelEventCallback callback;
+    private final View view;
+
+    /**
+     * Takes the board of {@code preparedLevel}, so it's good for a single session.
+     */
+    public Session(PreparedLevel preparedLevel, LevelEventCallback callback, View view) {
+        this.callback = callback;
+        this.view = view;
+
+        replay = new Replay(preparedLevel.getName(), preparedLevel.getLevel().getSourceHash());
+
+        board = preparedLevel.getBoard();
+        initialState = board.snapshot();
+
+        deadlocks = board.getLevelData().getDeadlockAnalysis();
+        deadlocked = deadlocks.isDeadlocked(board);
+        enterPosition();
+    }
+
+    /**
+     * Puts level back to its initial state. Views should place their sprites again.
+     */
+    public void restart() {
+        replay.record(Replay.OP_RESTART, getTimeMs());
+        cancelQueuedMoves();
+
+        board.restore(initialState);
+
+        playerMoving = false;
+        levelCompleted = false;
+        tickStepsChanged = false;
+        steps = 0;
+        journal.clear();
+        deadlocked = deadlocks.isDeadlocked(board);
+        positions.clear();
+        positionRepeated = enterPosition();
+
+        forceCallbackPushInfo();
+    }
+
+    public void forceCallbackPushInfo() {
+        onStepsChanged();
+        onBoxesPlacedChanged();
+        onDeadlockChanged();
+        onPositionRepeatedChanged();
+    }
+
+    public void update(float elapsed) {
+        time += elapsed;
+
+        if (instant) {
+            // Whole walk or drag is made in one frame
+            while (! isIdle() && ! board.isSolved()) {
+                moveQueued();
+            }
+        }
+    }
+
+    /**
+     * Checks win condition if anything was moved since last call.
+     */
+    public void postUpdate() {
+        if (tickStepsChanged && board.isSolved()) {
+            levelCompleted = true;
+            cancelQueuedMoves();
+
+            if (callback != null) {
+                callback.onLevelCompleted();
+            }
+
+            tickStepsChanged = false;
+        }
+    }
+
+    /**
+     * Ends current move when its animation is over and starts next queued one.
+     */
+    public void moveFinished() {
+        playerMoving = false;
+
+        if (bufferedMoves.isEmpty() && queuedMoves.isEmpty()) {
+            view.playerStopped();
+        } else {
+            moveQueued();
+        }
+    }
+
+    public boolean isLevelCompleted() {
+        return levelCompleted;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * In instant mode every move is finished as soon as it's made.
+     */
+    public void setInstant(boolean instant) {
+        this.instant = instant;
+
+        if (instant) {
+            playerMoving = false;
+        }
+    }
+
+    public boolean isInstant() {
+        return instant;
+    }
+
+    public boolean isPlayerMoving() {
+        return playerMoving;
+    }
+
+    public boolean isPositionRepeated() {
+        return positionRepeated;
+    }
+
+    public boolean isDeadlocked() {
+        return deadlocked;
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public Replay getReplay() {
+        return replay;
+    }
+
+    private int getTimeMs() {
+        return (int) (time * 1000);
+    }
+
+    /**
+     * Click on a box selects it, next click moves it there. Click on a free tile walks player to it
+     * without pushing boxes. Moves start after current move is finished.
+     */
+    public void tileClicked(int tileX, int tileY) {
+        if (levelCompleted || ! board.isInside(tileX, tileY)) {
+            return;
+        }
+
+        int cell = board.cellOf(tileX, tileY);
+        int boxCell = selection.getCell();
+
+        cancelQueuedMoves();
+
+        if (board.hasBox(cell)) {
+            if (cell != boxCell) {
+                selection.select(cell);
+                view.boxSelected(cell, true);
+            }
+            return;
+        }
+
+        boolean found;
+        if (boxCell != BoxSelection.NONE) {
+            found = pushPathFinder.findPath(board, boxCell, cell, queuedMoves) != PushPathFinder.NO_PATH;
+        } else {
+            found = pathFinder.findPath(board, cell, queuedMoves) != PathFinder.NO_PATH;
+        }
+
+        if (found && ! playerMoving) {
+            moveQueued();
+        }
+    }
+
+    private void cancelQueuedMoves() {
+        queuedMoves.clear();
+        bufferedMoves.clear();
+        clearSelection();
+    }
+
+    private void clearSelection() {
+        if (! selection.isEmpty()) {
+            view.boxSelected(selection.clear(), false);
+        }
+    }
+
+    private void moveQueued() {
+        World.Direction direction = bufferedMoves.poll();
+        if (direction == null) {
+            direction = queuedMoves.poll();
+        }
+
+        if (direction != null) {
+            movePlayer(direction);
+        }
+    }
+
+    /**
+     * @return true if player stands still and has nothing to do.
+     */
+    public boolean isIdle() {
+        return ! playerMoving && bufferedMoves.isEmpty() && queuedMoves.isEmpty();
+    }
+
+    /**
+     * Moves player right away or after current move if input buffer isn't full.
+     */
+    public void tryMovePlayer(World.Direction direction) {
+        if (playerMoving) {
+            if (Settings.INPUT_BUFFER_DEPTH == 0) {
+                return;
+            }
+
+            // Keys take over the walk or drag
+            queuedMoves.clear();
+            clearSelection();
+
+            if (! bufferedMoves.add(direction) && Settings.INPUT_BUFFER_COALESCE) {
+                bufferedMoves.replaceLast(direction);
+            }
+            return;
+        }
+
+        cancelQueuedMoves();
+        movePlayer(direction);
+    }
+
+    private void movePlayer(World.Direction direction) {
+        if (levelCompleted) {
+            return;
+        }
+
+        int fromCell = board.getPlayerCell();
+
+        Log.d("Trying to move %d:%d to %s", board.tileX(fromCell), board.tileY(fromCell), direction);
+
+        int pushed = board.move(direction);
+        if (pushed != Board.MOVE_BLOCKED) {
+            journal.record(direction, pushed);
+            replay.recordMove(direction, getTimeMs());
+            steps++;
+
+            if (pushed > 0) {
+                int offset = board.offset(direction);
+                moveBoxes(fromCell + offset, pushed, offset, offset);
+                checkPushedBox(fromCell + (pushed + 1) * offset);
+                setPositionRepeated(enterPosition());
+            }
+        }
+        startMovePlayer(direction, pushed);
+    }
+
+    public void undo() {
+        if (playerMoving || levelCompleted || ! journal.canUndo()) {
+            return;
+        }
+        cancelQueuedMoves();
+
+        int entry = journal.undo();
+        replay.record(Replay.OP_UNDO, getTimeMs());
+        World.Direction direction = MoveJournal.directionOf(entry);
+        int pushed = MoveJournal.pushedOf(entry);
+
+        int fromCell = board.getPlayerCell();
+        if (pushed > 0) {
+            leavePosition();
+        }
+        board.undoMove(direction, pushed);
+        steps--;
+
+        if (pushed > 0) {
+            int offset = board.offset(direction);
+            moveBoxes(fromCell + offset, pushed, offset, -offset);
+            setDeadlocked(deadlocks.isDeadlocked(board));
+            // Position we are back to is still counted for the pushes that reached it
+            setPositionRepeated(positions.get(board.getPositionHash()) > 1);
+        }
+        // Player steps back keeping his facing
+        startMovePlayer(direction, pushed);
+    }
+
+    public void redo() {
+        if (playerMoving || levelCompleted || ! journal.canRedo()) {
+            return;
+        }
+        cancelQueuedMoves();
+
+        World.Direction direction = MoveJournal.directionOf(journal.redo());
+        replay.record(Replay.OP_REDO, getTimeMs());
+
+        int fromCell = board.getPlayerCell();
+        int pushed = board.move(direction);
+        steps++;
+
+        if (pushed > 0) {
+            int offset = board.offset(direction);
+            moveBoxes(fromCell + offset, pushed, offset, offset);
+            checkPushedBox(fromCell + (pushed + 1) * offset);
+            setPositionRepeated(enterPosition());
+        }
+        startMovePlayer(direction, pushed);
+    }
+
+    /**
+     * @return whether position was already reached before.
+     */
+    private boolean enterPosition() {
+        long hash = board.getPositionHash();
+        int count = positions.get(hash);
+
+        positions.put(hash, count + 1);
+        return count > 0;
+    }
+
+    private void leavePosition() {
+        long hash = board.getPositionHash();
+        int count = positions.get(hash);
+
+        if (count <= 1) {
+            positions.remove(hash);
+        } else {
+            positions.put(hash, count - 1);
+        }
+    }
+
+    private void setPositionRepeated(boolean positionRepeated) {
+        if (this.positionRepeated != positionRepeated) {
+            this.positionRepeated = positionRepeated;
+            onPositionRepeatedChanged();
+        }
+    }
+
+    private void checkPushedBox(int boxCell) {
+        if (! deadlocked && deadlocks.isDeadlock(board, boxCell)) {
+            setDeadlocked(true);
+        }
+    }
+
+    private void setDeadlocked(boolean deadlocked) {
+        if (this.deadlocked != deadlocked) {
+            this.deadlocked = deadlocked;
+            onDeadlockChanged();
+        }
+    }
+
+    private void startMovePlayer(World.Direction direction, int pushed) {
+        boolean moved = pushed != Board.MOVE_BLOCKED;
+        playerMoving = moved && ! instant;
+
+        view.playerMoved(direction, pushed);
+
+        if (moved) {
+            tickStepsChanged = true;
+            onStepsChanged();
+
+            if (pushed > 0) {
+                onBoxesPlacedChanged();
+            }
+        }
+    }
+
+    /**
+     * Row of {@code count} boxes starting at {@code firstCell} and going along {@code offset}
+     * was shifted by {@code shift} on the board.
+     */
+    private void moveBoxes(int firstCell, int count, int offset, int shift) {
+        for (int n = 0; n < count; n++) {
+            // Leading box goes first so views don't overwrite boxes
+            int i = shift == offset ? count - 1 - n : n;
+            int currentCell = firstCell + i * offset;
+
+            view.boxMoved(currentCell, currentCell + shift);
+        }
+    }
+
+    private void onStepsChanged() {
+        if (callback != null) {
+            callback.onStepsChanged(steps);
+        }
+    }
+
+    private void onBoxesPlacedChanged() {
+        if (callback != null) {
+            callback.onBoxesPlacedChanged(board.getBoxesOnGoalsCount(), board.getGoalsCount());
+        }
+    }
+
+    private void onPositionRepeatedChanged() {
+        if (callback != null) {
+            callback.onPositionRepeatedChanged(positionRepeated);
+        }
+    }
+
+    private void onDeadlockChanged() {
+        if (callback != null) {
+            callback.onDeadlockChanged(deadlocked);
+        }
+    }
+}
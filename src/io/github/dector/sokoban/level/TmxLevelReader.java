@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.level;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Reads levels from Tiled maps without libgdx, so they can be used headless.
+ */
+public class TmxLevelReader {
+
+    private static final String LAYER_BACKGROUND = "Background";
+    private static final String LAYER_OBJECTS = "Objects";
+
+    public static CompiledLevel read(File file) throws IOException {
+        return read(readBytes(file), file.getPath());
+    }
+
+    public static CompiledLevel read(byte[] source, String name) throws IOException {
+        Document document;
+        try {
+            // Level files come from anywhere, they may not pull in other files or expand entities
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setXIncludeAware(false);
+            factory.setExpandEntityReferences(false);
+
+            document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(source));
+        } catch (Exception e) {
+            throw new IOException("Can't parse level " + name, e);
+        }
+
+        Element map = document.getDocumentElement();
+        int width = Integer.parseInt(map.getAttribute("width"));
+        int height = Integer.parseInt(map.getAttribute("height"));
+        int tileWidth = Integer.parseInt(map.getAttribute("tilewidth"));
+        int tileHeight = Integer.parseInt(map.getAttribute("tileheight"));
+
+        Element background = findNamed(map.getElementsByTagName("layer"), LAYER_BACKGROUND);
+        if (background == null) {
+            throw new IOException("No " + LAYER_BACKGROUND + " layer in " + name);
+        }
+
+        String[] tilesData = background.getElementsByTagName("data").item(0).getTextContent().trim().split("\\s*,\\s*");
+        if (tilesData.length != width * height) {
+            throw new IOException("Wrong tiles count in " + name);
+        }
+
+        byte[] tiles = new byte[tilesData.length];
+        for (int i = 0; i < tilesData.length; i++) {
+            int id = Integer.parseInt(tilesData[i]);
+
+            if (id < 0 || id > 0xff) {
+                throw new IOException("Unsupported tile id " + id + " in " + name);
+            }
+
+            tiles[i] = (byte) id;
+        }
+
+        int player = CompiledLevel.NO_PLAYER;
+        IntList boxes = new IntList();
+        IntList holders = new IntList();
+
+        Element objects = findNamed(map.getElementsByTagName("objectgroup"), LAYER_OBJECTS);
+        if (objects != null) {
+            NodeList objectsList = objects.getElementsByTagName("object");
+
+            for (int i = 0; i < objectsList.getLength(); i++) {
+                Element obj = (Element) objectsList.item(i);
+                String objName = obj.getAttribute("name");
+
+                // Tile objects are anchored by their bottom left corner
+                int tileX = (int) Float.parseFloat(obj.getAttribute("x")) / tileWidth;
+                int tileY = (int) Float.parseFloat(obj.getAttribute("y")) / tileHeight - 1;
+                int tile = tileY * width + tileX;
+
+                if ("Player".equals(objName)) {
+                    player = tile;
+                } else if ("Box".equals(objName)) {
+                    boxes.add(tile);
+                } else if ("Holder".equals(objName)) {
+                    holders.add(tile);
+                }
+            }
+        }
+
+        // Win check, deadlock detection and solver rely on it
+        if (boxes.size != holders.size) {
+            throw new IOException(boxes.size + " boxes for " + holders.size + " holders in " + name);
+        }
+
+        return new CompiledLevel(hash(source), width, height, tiles, player, boxes.toArray(), holders.toArray());
+    }
+
+    public static int hash(byte[] source) {
+        CRC32 crc = new CRC32();
+        crc.update(source, 0, source.length);
+
+        return (int) crc.getValue();
+    }
+
+    static byte[] readBytes(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Element findNamed(NodeList nodes, String name) {
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element element = (Element) nodes.item(i);
+
+            if (name.equals(element.getAttribute("name"))) {
+                return element;
+            }
+        }
+
+        return null;
+    }
+
+    private static class IntList {
+
+        private int[] values = new int[16];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
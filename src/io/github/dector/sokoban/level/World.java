@@ -26,12 +26,10 @@
 package io.github.dector.sokoban.level;
 
 import aurelienribon.tweenengine.*;
-import com.badlogic.gdx.maps.MapObject;
-import com.badlogic.gdx.maps.objects.RectangleMapObject;
-import com.badlogic.gdx.maps.tiled.TiledMap;
-import com.badlogic.gdx.maps.tiled.TmxMapLoader;
+import io.github.dector.sokoban.replay.Replay;
 import io.github.dector.sokoban.util.Log;
 import io.github.dector.sokoban.util.Settings;
+import io.github.dector.sokoban.util.WorldAtlas;
 import org.flixel.*;
 import org.flixel.plugin.tweens.TweenPlugin;
 import org.flixel.plugin.tweens.TweenSprite;
@@ -39,12 +37,36 @@ import org.flixel.plugin.tweens.TweenSprite;
 public class World extends FlxGroup {
 
     public enum Tile {
-        WALL(true), GRASS(false);
+        WALL(Tile.SOLID), GRASS(0);
+
+        public static final int SOLID = 0x01;
+        public static final int ICE = 0x02;
+        // Entering is allowed only when moving in this direction
+        public static final int ONE_WAY_UP = 0x04 << 0;
+        public static final int ONE_WAY_DOWN = 0x04 << 1;
+        public static final int ONE_WAY_LEFT = 0x04 << 2;
+        public static final int ONE_WAY_RIGHT = 0x04 << 3;
+
+        // values() clones array on every call
+        private static final Tile[] BY_ID = values();
+
+        // Indexed by tile id, empty cells are outside of the level
+        private static final int[] FLAGS_BY_ID = new int[TILEMAP_START_INDEX + BY_ID.length];
+        static {
+            for (int id = 0; id < TILEMAP_START_INDEX; id++) {
+                FLAGS_BY_ID[id] = SOLID;
+            }
+            for (Tile tile : BY_ID) {
+                FLAGS_BY_ID[TILEMAP_START_INDEX + tile.ordinal()] = tile.flags;
+            }
+        }
 
         public final boolean solid;
+        public final int flags;
 
-        Tile(boolean solid) {
-            this.solid = solid;
+        Tile(int flags) {
+            this.flags = flags;
+            this.solid = (flags & SOLID) != 0;
         }
 
         public int id() {
@@ -52,7 +74,18 @@ public class World extends FlxGroup {
         }
 
         public static Tile byId(int id) {
-            return values()[id - TILEMAP_START_INDEX];
+            return BY_ID[id - TILEMAP_START_INDEX];
+        }
+
+        /**
+         * @return property flags, unknown ids are solid.
+         */
+        public static int flagsOf(int id) {
+            return 0 <= id && id < FLAGS_BY_ID.length ? FLAGS_BY_ID[id] : SOLID;
+        }
+
+        public static boolean isSolid(int id) {
+            return (flagsOf(id) & SOLID) != 0;
         }
     }
 
@@ -97,199 +130,351 @@ public class World extends FlxGroup {
         }
     }
 
+    public static final float MIN_SPEED = .25f;
+    public static final float MAX_SPEED = 64;
+
     private static final int TILE_SIZE = 32;
 
-    private static final int MAX_BOXES_IN_ROW_PUSH = 1;
+    // Seconds per move at normal speed
+    private static final float MOVE_DURATION = .5f;
+
+    // Player and every box of a push are animated at once
+    private static final int MOVE_TWEENS_COUNT = 1 + Board.MAX_BOXES_IN_ROW_PUSH;
 
     private static final int TILEMAP_START_INDEX = 1;
 
+    private static final int SELECTED_BOX_COLOR = 0xaaffaa;
+    private static final int BOX_COLOR = 0xffffff;
+
+    // Game rules, sprites follow it
+    private Session session;
+    private Board board;
+
     private FlxSprite player;
 
     private FlxGroup boxes;
-    private FlxObject[][] boxesMask;
+    // Ids of box sprites in boxes group by board cell
+    private BoxIndex boxIndex;
+    // Ids of boxes shown by the last cull
+    private int[] shownBoxes;
+    private int shownBoxesCount;
 
-    private FlxGroup holders;
-    private FlxPoint[] holdersMask;
+    private ChunkedTilemap level;
+
+    private float speed = 1;
+    // Moves are applied without animation, sprites are placed once per frame
+    private boolean instant;
+    private boolean spritesDirty;
+
+    private LevelEventCallback callback;
 
-    private FlxTilemap level;
+    // Single instance, so moves don't allocate callbacks
+    private final TweenCallback playerMovedCallback = new TweenCallback() {
+        @Override
+        public void onEvent(int event, BaseTween<?> baseTween) {
+            if (event == TweenCallback.COMPLETE) {
+                session.moveFinished();
+            }
+        }
+    };
 
-    private boolean playerMoving;
-    private boolean levelCompleted;
+    private final Session.View view = new Session.View() {
+        @Override
+        public void boxMoved(int fromCell, int toCell) {
+            moveBoxSprite(fromCell, toCell);
+        }
 
-    private int steps;
+        @Override
+        public void playerMoved(Direction direction, int pushed) {
+            movePlayerSprite(direction, pushed);
+        }
 
-    // For internal usage on.
-    // To avoid win condition check on every frame
-    private boolean tickStepsChanged;
+        @Override
+        public void playerStopped() {
+            updatePlayerSprite();
+        }
 
-    private LevelEventCallback callback;
+        @Override
+        public void boxSelected(int cell, boolean selected) {
+            boxAt(cell).setColor(selected ? SELECTED_BOX_COLOR : BOX_COLOR);
+        }
+    };
 
     public World(LevelEventCallback callback) {
         this.callback = callback;
     }
 
-    public void init(String pathToLevel) {
-        TmxMapLoader mapLoader = new TmxMapLoader();
-        TmxMapLoader.Parameters params = new TmxMapLoader.Parameters();
-        params.yUp = false;
+    public void init(PreparedLevel preparedLevel) {
+        CompiledLevel compiledLevel = preparedLevel.getLevel();
 
-        TiledMap map = mapLoader.load(pathToLevel, params);
+        // Finished tweens go back to the pool, so moves reuse them
+        Tween.ensurePoolCapacity(MOVE_TWEENS_COUNT);
 
-        level = new FlxTilemap();
-        level.loadMap(FlxTilemap.tiledmapToCSV(map, "Background"), "assets/tiles.png",
-                TILE_SIZE, TILE_SIZE, FlxTilemap.OFF, TILEMAP_START_INDEX);
-        add(level);
+        session = new Session(preparedLevel, callback, view);
+        session.setInstant(instant);
+        board = session.getBoard();
 
-        holders = new FlxGroup();
-        add(holders);
+        // Holders are drawn with tiles they lay on
+        level = new ChunkedTilemap(preparedLevel, WorldAtlas.graphic("assets/tiles.png"), TILE_SIZE, TILEMAP_START_INDEX);
+        add(level);
 
         boxes = new FlxGroup();
         add(boxes);
-        boxesMask = new FlxObject[level.widthInTiles][level.heightInTiles];
+        boxIndex = BoxIndex.create(board.getCellsCount(), board.getBoxesCount());
 
         player = new FlxSprite();
         add(player);
 
         FlxG.camera.follow(player, FlxCamera.STYLE_TOPDOWN_TIGHT);
 
-        for (MapObject obj : map.getLayers().get("Objects").getObjects()) {
-            String objName = obj.getName();
-
-            if ("Player".equals(objName)) {
-                player.loadGraphic(Settings.PLAYER_SKIN.getAssetFile(), true, false, TILE_SIZE);
-                player.addAnimation("stand_down",   new int[]{  0,  8,        },  1, true);
-                player.addAnimation("walk_down",    new int[]{  1,  9, 17,    }, 12, true);
-                player.addAnimation("stand_left",   new int[]{  2, 10,        },  1, true);
-                player.addAnimation("walk_left",    new int[]{  3, 11, 19,    }, 12, true);
-                player.addAnimation("stand_right",  new int[]{  4, 12,        },  1, true);
-                player.addAnimation("walk_right",   new int[]{  5, 13, 21,    }, 12, true);
-                player.addAnimation("stand_up",     new int[]{  6, 14,        },  1, true);
-                player.addAnimation("walk_up",      new int[]{  7, 15, 23,    }, 12, true);
-                player.x = ((RectangleMapObject) obj).getRectangle().getX();
-                player.y = ((RectangleMapObject) obj).getRectangle().getY() - TILE_SIZE;
-                player.setFacing(FlxObject.DOWN);
-                updatePlayerSprite();
-            } else if ("Box".equals(objName)) {
-                FlxSprite box = new FlxSprite();
-                box.loadGraphic("assets/box.png");
-                box.x = ((RectangleMapObject) obj).getRectangle().getX();
-                box.y = ((RectangleMapObject) obj).getRectangle().getY() - TILE_SIZE;
-                boxes.add(box);
-                boxesMask[(int) box.x / TILE_SIZE][(int) box.y / TILE_SIZE] = box;
-            } else if ("Holder".equals(objName)) {
-                FlxSprite holder = new FlxSprite();
-                holder.loadGraphic("assets/holder.png");
-                holder.x = ((RectangleMapObject) obj).getRectangle().getX();
-                holder.y = ((RectangleMapObject) obj).getRectangle().getY() - TILE_SIZE;
-                holders.add(holder);
-            }
+        for (int i = 0; i < compiledLevel.getHoldersCount(); i++) {
+            int cell = toCell(compiledLevel, compiledLevel.getHolder(i));
 
-            holdersMask = new FlxPoint[holders.members.size];
-            for (int i = 0; i < holders.members.size; i++) {
-                FlxSprite holder = (FlxSprite) holders.members.get(i);
-                FlxPoint p = new FlxPoint(holder.x / TILE_SIZE, holder.y / TILE_SIZE);
-                holdersMask[i] = p;
-            }
+            FlxSprite holder = new FlxSprite();
+            holder.loadGraphic(WorldAtlas.graphic("assets/holder.png"));
+            holder.x = board.tileX(cell) * TILE_SIZE;
+            holder.y = board.tileY(cell) * TILE_SIZE;
+            level.addStatic(holder);
+        }
+
+        for (int i = 0; i < compiledLevel.getBoxesCount(); i++) {
+            int cell = toCell(compiledLevel, compiledLevel.getBox(i));
+
+            FlxSprite box = new FlxSprite();
+            box.loadGraphic(WorldAtlas.graphic("assets/box.png"));
+            box.x = board.tileX(cell) * TILE_SIZE;
+            box.y = board.tileY(cell) * TILE_SIZE;
+            // Shown by cullBoxes() when in view
+            box.visible = false;
+            box.active = false;
+            boxIndex.put(cell, i);
+            boxes.add(box);
         }
+        shownBoxes = new int[compiledLevel.getBoxesCount()];
+
+        player.loadGraphic(WorldAtlas.graphic(Settings.PLAYER_SKIN.getAssetFile()), true, false, TILE_SIZE);
+        player.addAnimation("stand_down",   new int[]{  0,  8,        },  1, true);
+        player.addAnimation("walk_down",    new int[]{  1,  9, 17,    }, 12, true);
+        player.addAnimation("stand_left",   new int[]{  2, 10,        },  1, true);
+        player.addAnimation("walk_left",    new int[]{  3, 11, 19,    }, 12, true);
+        player.addAnimation("stand_right",  new int[]{  4, 12,        },  1, true);
+        player.addAnimation("walk_right",   new int[]{  5, 13, 21,    }, 12, true);
+        player.addAnimation("stand_up",     new int[]{  6, 14,        },  1, true);
+        player.addAnimation("walk_up",      new int[]{  7, 15, 23,    }, 12, true);
+        player.x = board.tileX(board.getPlayerCell()) * TILE_SIZE;
+        player.y = board.tileY(board.getPlayerCell()) * TILE_SIZE;
+        player.setFacing(FlxObject.DOWN);
+        updatePlayerSprite();
+    }
+
+    /**
+     * Puts level back to its initial state reusing all sprites.
+     * Tweens of world objects should be killed before.
+     */
+    public void restart() {
+        session.restart();
+
+        boxIndex.clear();
+        int id = 0;
+        for (int cell = board.nextBoxCell(0); cell >= 0; cell = board.nextBoxCell(cell + 1)) {
+            boxIndex.put(cell, id++);
+        }
+
+        syncSprites();
+        player.setFacing(FlxObject.DOWN);
+        updatePlayerSprite();
     }
 
     public void forceCallbackPushInfo() {
-        onStepsChanged();
+        session.forceCallbackPushInfo();
     }
 
     @Override
-    public void postUpdate() {
-        super.postUpdate();
+    public void update() {
+        super.update();
 
-        if (tickStepsChanged && checkBoxesPlaced()) {
-            levelCompleted = true;
+        session.update(FlxG.elapsed);
+    }
 
-            if (callback != null) {
-                callback.onLevelCompleted();
-            }
+    @Override
+    public void draw() {
+        if (spritesDirty) {
+            syncSprites();
+        }
+        // Camera has followed player since update
+        cullBoxes();
+
+        super.draw();
+    }
 
-            tickStepsChanged = false;
+    /**
+     * Boxes out of camera view are neither updated nor drawn, tweens move them anyway.
+     * Only cells around the view are looked at, so far away boxes cost nothing.
+     */
+    private void cullBoxes() {
+        for (int i = 0; i < shownBoxesCount; i++) {
+            FlxObject box = (FlxObject) boxes.members.get(shownBoxes[i]);
+            box.visible = false;
+            box.active = false;
         }
+        shownBoxesCount = 0;
+
+        FlxCamera camera = FlxG.camera;
+
+        // One tile margin for partly visible boxes and one more for boxes sliding to their cells
+        int fromX = Math.max(0, (int) Math.floor(camera.scroll.x / TILE_SIZE) - 2);
+        int fromY = Math.max(0, (int) Math.floor(camera.scroll.y / TILE_SIZE) - 2);
+        int toX = Math.min(board.getWidth() - 1, (int) Math.floor((camera.scroll.x + camera.width) / TILE_SIZE) + 2);
+        int toY = Math.min(board.getHeight() - 1, (int) Math.floor((camera.scroll.y + camera.height) / TILE_SIZE) + 2);
+
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                int cell = board.cellOf(x, y);
+                if (! board.hasBox(cell)) {
+                    continue;
+                }
+
+                int id = boxIndex.get(cell);
+                FlxObject box = (FlxObject) boxes.members.get(id);
+                box.visible = true;
+                box.active = true;
+                shownBoxes[shownBoxesCount++] = id;
+            }
+        }
+    }
+
+    @Override
+    public void postUpdate() {
+        super.postUpdate();
+
+        session.postUpdate();
     }
 
     public boolean isLevelCompleted() {
-        return levelCompleted;
+        return session.isLevelCompleted();
     }
 
     public int getSteps() {
-        return steps;
+        return session.getSteps();
     }
 
-    private boolean checkBoxesPlaced() {
-        boolean result = true;
-
-        for (int i = 0; i < holdersMask.length && result; i++) {
-            FlxPoint p = holdersMask[i];
-
-            if (boxesMask[(int) p.x][(int) p.y] == null) {
-                result = false;
-            }
-        }
+    /**
+     * @param speed animation speed multiplier from {@link #MIN_SPEED} to {@link #MAX_SPEED}.
+     */
+    public void setSpeed(float speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(speed, MAX_SPEED));
+    }
 
-        return result;
+    public float getSpeed() {
+        return speed;
     }
 
-    public void tryMovePlayer(Direction direction) {
-        if (playerMoving) {
+    /**
+     * In instant mode moves are applied right away and no tweens are created.
+     */
+    public void setInstant(boolean instant) {
+        if (this.instant == instant) {
             return;
         }
-        if (levelCompleted) {
+
+        this.instant = instant;
+        if (session == null) {
             return;
         }
 
-        int tileX = (int) player.x / TILE_SIZE;
-        int tileY = (int) player.y / TILE_SIZE;
-        int nextX = direction.nextTileX(tileX);
-        int nextY = direction.nextTileY(tileY);
+        boolean playerMoving = session.isPlayerMoving();
+        session.setInstant(instant);
 
-        boolean moved = tryMoveBox(nextX, nextY, direction, 1);
-        if (moved) {
-            playerMoving = true;
-            player.velocity.x += nextX * TILE_SIZE;
-            player.velocity.y += nextY * TILE_SIZE;
+        if (instant && playerMoving) {
+            // Finish running animations at once
+            TweenPlugin.manager.killTarget(player);
+            for (int cell = board.nextBoxCell(0); cell >= 0; cell = board.nextBoxCell(cell + 1)) {
+                TweenPlugin.manager.killTarget(boxAt(cell));
+            }
+
+            spritesDirty = true;
+            updatePlayerSprite();
         }
-        startMovePlayer(direction);
     }
 
-    private void startMovePlayer(Direction direction) {
+    public boolean isInstant() {
+        return instant;
+    }
+
+    public boolean isPositionRepeated() {
+        return session.isPositionRepeated();
+    }
+
+    public boolean isDeadlocked() {
+        return session.isDeadlocked();
+    }
+
+    /**
+     * @return cells player can walk to without pushing, cheap to call every frame.
+     */
+    public Reachability getReachability() {
+        return board.getReachability();
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public Replay getReplay() {
+        return session.getReplay();
+    }
+
+    /**
+     * Click on a box selects it, next click moves it there. Click on a free tile walks player to it
+     * without pushing boxes. Moves start after current move is finished.
+     */
+    public void pointerClicked(float worldX, float worldY) {
+        session.tileClicked((int) Math.floor(worldX / TILE_SIZE), (int) Math.floor(worldY / TILE_SIZE));
+    }
+
+    /**
+     * @return true if player stands still and has nothing to do.
+     */
+    public boolean isIdle() {
+        return session.isIdle();
+    }
+
+    /**
+     * Moves player right away or after current move if input buffer isn't full.
+     */
+    public void tryMovePlayer(Direction direction) {
+        session.tryMovePlayer(direction);
+    }
+
+    public void undo() {
+        session.undo();
+    }
+
+    public void redo() {
+        session.redo();
+    }
+
+    private void movePlayerSprite(Direction direction, int pushed) {
         player.setFacing(direction.getFacing());
         updatePlayerSprite();
 
-        if (playerMoving) {
-            animateObjectMoving(player, (int) player.velocity.x, (int) player.velocity.y,
-                    new TweenCallback() {
-                        @Override
-                        public void onEvent(int event, BaseTween<?> baseTween) {
-                            if (event == TweenCallback.COMPLETE) {
-                                playerMoving = false;
-                                updatePlayerSprite();
-                            }
-                        }
-                    });
-
-            steps++;
-            tickStepsChanged = true;
-            onStepsChanged();
-        } else {
-            updatePlayerSprite();
+        if (pushed == Board.MOVE_BLOCKED) {
+            return;
         }
 
-        player.velocity.x = 0;
-        player.velocity.y = 0;
-    }
+        if (instant) {
+            spritesDirty = true;
+        } else {
+            int playerCell = board.getPlayerCell();
 
-    private void onStepsChanged() {
-        if (callback != null) {
-            callback.onStepsChanged(steps);
+            animateObjectMoving(player, board.tileX(playerCell) * TILE_SIZE, board.tileY(playerCell) * TILE_SIZE,
+                    playerMovedCallback);
         }
     }
 
     private void updatePlayerSprite() {
+        boolean playerMoving = session.isPlayerMoving();
+
         switch (player.getFacing()) {
             case FlxObject.LEFT:
                 player.play(playerMoving ? "walk_left" : "stand_left");
@@ -306,76 +491,48 @@ public class World extends FlxGroup {
         }
     }
 
-    private boolean tryMoveBox(final int currentX, final int currentY, Direction direction, int indexInRow) {
-        boolean moved = false;
-
-        Log.d("Trying to move %d:%d to %s", currentX, currentY, direction);
-        Log.d("In row: %d", indexInRow);
-
-        if (indexInRow <= MAX_BOXES_IN_ROW_PUSH
-                && ! isMapTileSolid(currentX, currentY)
-                && isBoxCoordsValid(currentX, currentY)) {
-            final FlxObject currentBox = boxesMask[currentX][currentY];
+    private void moveBoxSprite(int fromCell, int toCell) {
+        FlxObject box = boxAt(fromCell);
+        boxIndex.move(fromCell, toCell);
 
-            if (currentBox != null) {
-                final int nextX = direction.nextTileX(currentX);
-                final int nextY = direction.nextTileY(currentY);
+        Log.d("Box moved to %d:%d", board.tileX(toCell), board.tileY(toCell));
 
-                Log.d("Next: %d:%d", nextX, nextY);
-
-                if (isBoxCoordsValid(nextX, nextY)
-                        && ! isMapTileSolid(nextX, nextY)) {
-                    final FlxObject nextBox = boxesMask[nextX][nextY];
-
-                    Log.d("Next object: %s", nextBox);
-
-                    if (nextBox == null || !nextBox.getSolid()) {
-                        moved = true;
-                    } else {
-                        boolean nextMoved = tryMoveBox(nextX, nextY, direction, indexInRow + 1);
+        if (instant) {
+            spritesDirty = true;
+        } else {
+            animateObjectMoving(box, board.tileX(toCell) * TILE_SIZE, board.tileY(toCell) * TILE_SIZE, null);
+        }
+    }
 
-                        if (nextMoved) {
-                            moved = true;
-                        }
-                    }
-                }
+    private FlxSprite boxAt(int cell) {
+        return (FlxSprite) boxes.members.get(boxIndex.get(cell));
+    }
 
-                if (moved) {
-                    animateObjectMoving(currentBox, nextX * TILE_SIZE, nextY * TILE_SIZE,
-                            new TweenCallback() {
-                                @Override
-                                public void onEvent(int event, BaseTween<?> baseTween) {
-                                    if (event == TweenCallback.COMPLETE) {
-                                        boxesMask[nextX][nextY] = currentBox;
-                                        boxesMask[currentX][currentY] = null;
-                                    }
-                                }
-                            }
-                    );
-                }
-            } else {
-                // Cheat
-                moved = true;
-            }
+    /**
+     * Places all sprites at their board cells in one pass.
+     */
+    private void syncSprites() {
+        for (int cell = board.nextBoxCell(0); cell >= 0; cell = board.nextBoxCell(cell + 1)) {
+            FlxObject box = boxAt(cell);
+            box.x = board.tileX(cell) * TILE_SIZE;
+            box.y = board.tileY(cell) * TILE_SIZE;
         }
 
-        return moved;
+        player.x = board.tileX(board.getPlayerCell()) * TILE_SIZE;
+        player.y = board.tileY(board.getPlayerCell()) * TILE_SIZE;
+
+        spritesDirty = false;
     }
 
     private void animateObjectMoving(FlxObject obj, int toX, int toY, TweenCallback callback) {
-        Tween.to(obj, TweenSprite.XY, .5f)
+        Tween.to(obj, TweenSprite.XY, MOVE_DURATION / speed)
                 .target(toX, toY)
                 .setCallback(callback)
                 .ease(TweenEquations.easeNone)
                 .start(TweenPlugin.manager);
     }
 
-    private boolean isBoxCoordsValid(int tileX, int tileY) {
-        return 0 <= tileX && tileX < boxesMask.length
-                && 0 <= tileY && tileY < boxesMask[tileX].length;
-    }
-
-    private boolean isMapTileSolid(int tileX, int tileY) {
-        return Tile.byId(level.getTile(tileX, tileY)).solid;
+    private int toCell(CompiledLevel compiledLevel, int tile) {
+        return board.cellOf(tile % compiledLevel.getWidth(), tile / compiledLevel.getWidth());
     }
 }
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.replay;
+
+import io.github.dector.sokoban.level.World;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Recorded player input for one level.
+ *
+ * Every operation is stored as one byte followed by time since previous operation (ms, varint).
+ */
+public class Replay {
+
+    public static final String EXTENSION = ".rpl";
+
+    public static final int OP_UNDO = 4;
+    public static final int OP_REDO = 5;
+    public static final int OP_RESTART = 6;
+
+    private static final int MAGIC = 0x534b5250;
+    private static final int VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final String levelName;
+    private final int levelHash;
+
+    private byte[] ops = new byte[INITIAL_CAPACITY];
+    private int[] times = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private int steps;
+    private boolean completed;
+
+    public Replay(String levelName, int levelHash) {
+        this.levelName = levelName;
+        this.levelHash = levelHash;
+    }
+
+    public String getLevelName() {
+        return levelName;
+    }
+
+    public int getLevelHash() {
+        return levelHash;
+    }
+
+    public void recordMove(World.Direction direction, int timeMs) {
+        record(direction.ordinal(), timeMs);
+    }
+
+    public void record(int op, int timeMs) {
+        if (size == ops.length) {
+            ensureCapacity(size * 2);
+        }
+
+        ops[size] = (byte) op;
+        times[size] = timeMs;
+        size++;
+    }
+
+    /**
+     * Makes room for {@code capacity} operations, so recording them doesn't allocate.
+     */
+    public void ensureCapacity(int capacity) {
+        if (ops.length < capacity) {
+            ops = Arrays.copyOf(ops, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return direction ordinal or one of {@code OP_*} constants.
+     */
+    public int getOp(int i) {
+        return ops[i];
+    }
+
+    public int getTime(int i) {
+        return times[i];
+    }
+
+    /**
+     * Result claimed by the game. Checked by {@link ReplayVerifier}.
+     */
+    public void setResult(int steps, boolean completed) {
+        this.steps = steps;
+        this.completed = completed;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(levelName);
+            out.writeInt(levelHash);
+            out.writeInt(steps);
+            out.writeBoolean(completed);
+
+            out.writeInt(size);
+            int lastTime = 0;
+            for (int i = 0; i < size; i++) {
+                out.writeByte(ops[i]);
+                writeVarInt(out, times[i] - lastTime);
+                lastTime = times[i];
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * File isn't trusted, sizes stored in it are checked against its length.
+     */
+    public static Replay read(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Replay is too big: " + file);
+        }
+
+        byte[] bytes = new byte[(int) length];
+        DataInputStream fileIn = new DataInputStream(new FileInputStream(file));
+        try {
+            fileIn.readFully(bytes);
+        } finally {
+            fileIn.close();
+        }
+
+        ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(buffer);
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a replay: " + file);
+            }
+
+            Replay replay = new Replay(in.readUTF(), in.readInt());
+            int steps = in.readInt();
+            boolean completed = in.readBoolean();
+            replay.setResult(steps, completed);
+
+            int size = in.readInt();
+            // Every operation takes at least two bytes
+            if (size < 0 || size > buffer.available() / 2) {
+                throw new IOException("Bad operations count " + size + " in " + file);
+            }
+
+            replay.ensureCapacity(size);
+
+            int time = 0;
+            for (int i = 0; i < size; i++) {
+                int op = in.readByte();
+                time += readVarInt(in);
+                replay.record(op, time);
+            }
+
+            return replay;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+
+        while (true) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+
+            shift += 7;
+            if (shift > 28) {
+                throw new IOException("Malformed varint");
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.replay;
+
+import io.github.dector.sokoban.level.Board;
+import io.github.dector.sokoban.level.CompiledLevel;
+import io.github.dector.sokoban.level.LevelCache;
+import io.github.dector.sokoban.level.LevelPack;
+import io.github.dector.sokoban.level.MoveJournal;
+import io.github.dector.sokoban.level.World;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Re-runs replays on a headless board and checks the result claimed by the game.
+ */
+public class ReplayVerifier {
+
+    private final File levelsRoot;
+    private final LevelCache cache;
+
+    private final ConcurrentMap<String, CompiledLevel> levels = new ConcurrentHashMap<String, CompiledLevel>();
+    private final ConcurrentMap<String, LevelPack> packs = new ConcurrentHashMap<String, LevelPack>();
+
+    /**
+     * @param levelsRoot directory against which level names stored in replays are resolved.
+     */
+    public ReplayVerifier(File levelsRoot, LevelCache cache) {
+        this.levelsRoot = levelsRoot;
+        this.cache = cache;
+    }
+
+    public Result verify(Replay replay) throws IOException {
+        CompiledLevel level = levels.get(replay.getLevelName());
+        if (level == null) {
+            level = loadLevel(replay.getLevelName());
+            levels.putIfAbsent(replay.getLevelName(), level);
+        }
+
+        if (level.getSourceHash() != replay.getLevelHash()) {
+            return new Result(false, "Level was changed", 0, false);
+        }
+
+        return verify(replay, level);
+    }
+
+    private CompiledLevel loadLevel(String name) throws IOException {
+        int separator = name.lastIndexOf(LevelPack.INDEX_SEPARATOR);
+        if (separator < 0) {
+            return cache.load(resolve(name));
+        }
+
+        String packName = name.substring(0, separator);
+        LevelPack pack = packs.get(packName);
+        if (pack == null) {
+            pack = LevelPack.open(resolve(packName));
+            LevelPack existing = packs.putIfAbsent(packName, pack);
+            if (existing != null) {
+                pack = existing;
+            }
+        }
+
+        try {
+            return pack.read(Integer.parseInt(name.substring(separator + 1)) - 1);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad level name " + name);
+        }
+    }
+
+    /**
+     * Names come from replay files, so they must not point out of levels root.
+     */
+    private File resolve(String name) throws IOException {
+        File root = levelsRoot.getCanonicalFile();
+        File file = new File(root, name).getCanonicalFile();
+
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(root)) {
+                return file;
+            }
+        }
+
+        throw new IOException("Level is out of levels root: " + name);
+    }
+
+    public static Result verify(Replay replay, CompiledLevel level) {
+        Board board = level.toBoard();
+        Board.Snapshot initialState = board.snapshot();
+        MoveJournal journal = new MoveJournal();
+
+        int steps = 0;
+        boolean completed = false;
+
+        for (int i = 0; i < replay.getSize(); i++) {
+            int op = replay.getOp(i);
+
+            if (completed && op != Replay.OP_RESTART) {
+                return new Result(false, "Input after completion at " + i, steps, true);
+            }
+
+            if (op == Replay.OP_RESTART) {
+                board.restore(initialState);
+                journal.clear();
+                steps = 0;
+                completed = false;
+                continue;
+            }
+
+            if (op == Replay.OP_UNDO) {
+                if (! journal.canUndo()) {
+                    return new Result(false, "Nothing to undo at " + i, steps, false);
+                }
+
+                int entry = journal.undo();
+                board.undoMove(MoveJournal.directionOf(entry), MoveJournal.pushedOf(entry));
+                steps--;
+            } else if (op == Replay.OP_REDO) {
+                if (! journal.canRedo()) {
+                    return new Result(false, "Nothing to redo at " + i, steps, false);
+                }
+
+                int entry = journal.redo();
+                if (board.move(MoveJournal.directionOf(entry)) != MoveJournal.pushedOf(entry)) {
+                    return new Result(false, "Redo diverged at " + i, steps, false);
+                }
+                steps++;
+            } else if (0 <= op && op < Board.DIRECTIONS.length) {
+                World.Direction direction = Board.DIRECTIONS[op];
+
+                int pushed = board.move(direction);
+                if (pushed == Board.MOVE_BLOCKED) {
+                    return new Result(false, "Blocked move at " + i, steps, false);
+                }
+
+                journal.record(direction, pushed);
+                steps++;
+            } else {
+                return new Result(false, "Unknown operation " + op + " at " + i, steps, false);
+            }
+
+            completed = board.isSolved();
+        }
+
+        if (steps != replay.getSteps() || completed != replay.isCompleted()) {
+            return new Result(false, "Result mismatch: " + steps + " steps, completed: " + completed,
+                    steps, completed);
+        }
+
+        return new Result(true, "OK", steps, completed);
+    }
+
+    /**
+     * Verifies every replay in directory using all available cores.
+     */
+    public List<Result> verifyAll(File dir) throws IOException, InterruptedException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(Replay.EXTENSION);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Not a directory: " + dir);
+        }
+        Arrays.sort(files);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(files.length);
+
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        long startTime = System.nanoTime();
+
+                        // Any broken file is only rejected, others are still verified
+                        Result result;
+                        try {
+                            result = verify(Replay.read(file));
+                        } catch (IOException e) {
+                            result = new Result(false, e.getMessage(), 0, false);
+                        } catch (RuntimeException e) {
+                            result = new Result(false, e.toString(), 0, false);
+                        }
+
+                        result.fileName = file.getName();
+                        result.elapsedNanos = System.nanoTime() - startTime;
+
+                        return result;
+                    }
+                }));
+            }
+
+            List<Result> results = new ArrayList<Result>(files.length);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Result result = new Result(false, String.valueOf(e.getCause()), 0, false);
+                    result.fileName = files[i].getName();
+                    results.add(result);
+                }
+            }
+
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Usage: {@code ReplayVerifier <replays dir> [levels root] [cache dir]}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayVerifier <replays dir> [levels root] [cache dir]");
+            System.exit(2);
+        }
+
+        File levelsRoot = new File(args.length > 1 ? args[1] : ".");
+        LevelCache cache = new LevelCache(new File(args.length > 2 ? args[2] : "cache/levels/"));
+
+        List<Result> results = new ReplayVerifier(levelsRoot, cache).verifyAll(new File(args[0]));
+
+        int invalid = 0;
+        for (Result result : results) {
+            System.out.println(result);
+
+            if (! result.isValid()) {
+                invalid++;
+            }
+        }
+        System.out.println(String.format("%d replays, %d invalid", results.size(), invalid));
+
+        System.exit(invalid == 0 ? 0 : 1);
+    }
+
+    public static class Result {
+
+        private final boolean valid;
+        private final String message;
+        private final int steps;
+        private final boolean completed;
+
+        private String fileName;
+        private long elapsedNanos;
+
+        private Result(boolean valid, String message, int steps, boolean completed) {
+            this.valid = valid;
+            this.message = message;
+            this.steps = steps;
+            this.completed = completed;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int getSteps() {
+            return steps;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s (%d steps, completed: %b, %.1f us)",
+                    fileName, message, steps, completed, elapsedNanos / 1e3);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.solver;
+
+import io.github.dector.sokoban.level.Board;
+
+import java.util.Arrays;
+
+/**
+ * Lower bound of pushes left: cheapest assignment of boxes to distinct goals by push distances,
+ * other boxes ignored. Found by the Hungarian method on arrays reused between calls.
+ *
+ * Not thread safe, each search worker has its own.
+ */
+class GoalMatching {
+
+    private final int[][] goalDistances;
+    private final int unreachable;
+    private final int size;
+
+    // One based, row and column 0 are the method's sentinels
+    private final int[] boxCells;
+    private final long[] rowPotentials;
+    private final long[] columnPotentials;
+    private final int[] rowOfColumn;
+    private final int[] previousColumn;
+    private final long[] minSlack;
+    private final boolean[] visited;
+
+    /**
+     * @param goalDistances push distances to every goal by cell, {@code unreachable} where the goal can't be reached.
+     */
+    GoalMatching(int[][] goalDistances, int unreachable) {
+        this.goalDistances = goalDistances;
+        this.unreachable = unreachable;
+
+        size = goalDistances.length;
+        boxCells = new int[size + 1];
+        rowPotentials = new long[size + 1];
+        columnPotentials = new long[size + 1];
+        rowOfColumn = new int[size + 1];
+        previousColumn = new int[size + 1];
+        minSlack = new long[size + 1];
+        visited = new boolean[size + 1];
+    }
+
+    /**
+     * @return minimal sum of push distances or {@code unreachable} if boxes can't cover all goals.
+     */
+    int compute(Board board) {
+        int boxesCount = 0;
+        for (int cell = board.nextBoxCell(0); cell >= 0; cell = board.nextBoxCell(cell + 1)) {
+            boxCells[++boxesCount] = cell;
+        }
+
+        Arrays.fill(rowPotentials, 0);
+        Arrays.fill(columnPotentials, 0);
+        Arrays.fill(rowOfColumn, 0);
+
+        // Boxes are rows, goals are columns
+        for (int row = 1; row <= size; row++) {
+            rowOfColumn[0] = row;
+            int column = 0;
+
+            Arrays.fill(minSlack, Long.MAX_VALUE);
+            Arrays.fill(visited, false);
+
+            do {
+                visited[column] = true;
+                int currentRow = rowOfColumn[column];
+                long delta = Long.MAX_VALUE;
+                int nextColumn = 0;
+
+                for (int j = 1; j <= size; j++) {
+                    if (visited[j]) {
+                        continue;
+                    }
+
+                    long slack = cost(currentRow, j) - rowPotentials[currentRow] - columnPotentials[j];
+                    if (slack < minSlack[j]) {
+                        minSlack[j] = slack;
+                        previousColumn[j] = column;
+                    }
+                    if (minSlack[j] < delta) {
+                        delta = minSlack[j];
+                        nextColumn = j;
+                    }
+                }
+
+                for (int j = 0; j <= size; j++) {
+                    if (visited[j]) {
+                        rowPotentials[rowOfColumn[j]] += delta;
+                        columnPotentials[j] -= delta;
+                    } else {
+                        minSlack[j] -= delta;
+                    }
+                }
+
+                column = nextColumn;
+            } while (rowOfColumn[column] != 0);
+
+            // Flip the augmenting path
+            do {
+                int previous = previousColumn[column];
+                rowOfColumn[column] = rowOfColumn[previous];
+                column = previous;
+            } while (column != 0);
+        }
+
+        long total = 0;
+        for (int j = 1; j <= size; j++) {
+            int distance = cost(rowOfColumn[j], j);
+            if (distance >= unreachable) {
+                return unreachable;
+            }
+            total += distance;
+        }
+
+        return (int) total;
+    }
+
+    private int cost(int row, int column) {
+        return goalDistances[column - 1][boxCells[row]];
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.solver;
+
+import io.github.dector.sokoban.level.Board;
+import io.github.dector.sokoban.level.TmxLevelReader;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Solves every level in directory. Exits with non-zero code if any of them has no solution.
+ *
+ * Levels not solved within the nodes budget are reported as unknown and don't fail the check.
+ * For the bundled levels it proves level0 only: level1 has 13 boxes in an open room
+ * and stays unknown even with 40M nodes.
+ *
+ * Usage: {@code LevelPackChecker [levels dir] [max nodes per level]}
+ */
+public class LevelPackChecker {
+
+    private static final long DEFAULT_MAX_NODES = 1000000;
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "assets/levels/");
+        long maxNodes = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_MAX_NODES;
+
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".tmx");
+            }
+        });
+        if (files == null) {
+            System.err.println("Not a directory: " + dir);
+            System.exit(2);
+        }
+        Arrays.sort(files);
+
+        Solver solver = new Solver();
+        solver.setMaxNodes(maxNodes);
+
+        int unsolvable = 0;
+        int unknown = 0;
+
+        try {
+            for (File file : files) {
+                Board board = TmxLevelReader.read(file).toBoard();
+                Solution solution = solver.solve(board);
+
+                switch (solution.getResult()) {
+                    case SOLVED:
+                        System.out.println(file.getName() + ": " + solution);
+                        System.out.println("  " + solution.getLurd());
+                        break;
+                    case UNSOLVABLE:
+                        System.out.println(file.getName() + ": " + solution);
+                        unsolvable++;
+                        break;
+                    case ABORTED:
+                        System.out.println(file.getName() + ": UNKNOWN, nodes budget exceeded (" + solution.getStats() + ")");
+                        unknown++;
+                        break;
+                }
+            }
+        } finally {
+            solver.shutdown();
+        }
+
+        System.out.println(String.format("%d levels, %d unsolvable, %d unknown", files.length, unsolvable, unknown));
+        System.exit(unsolvable == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.solver;
+
+public class Solution {
+
+    public enum Result {
+        SOLVED, UNSOLVABLE, ABORTED
+    }
+
+    private final Result result;
+    private final String lurd;
+    private final SolverStats stats;
+
+    Solution(Result result, String lurd, SolverStats stats) {
+        this.result = result;
+        this.lurd = lurd;
+        this.stats = stats;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public boolean isSolved() {
+        return result == Result.SOLVED;
+    }
+
+    /**
+     * @return moves in LURD notation: lowercase for walking, uppercase for pushes. Null if not solved.
+     */
+    public String getLurd() {
+        return lurd;
+    }
+
+    public int getMovesCount() {
+        return lurd != null ? lurd.length() : 0;
+    }
+
+    public int getPushesCount() {
+        int pushes = 0;
+
+        if (lurd != null) {
+            for (int i = 0; i < lurd.length(); i++) {
+                if (Character.isUpperCase(lurd.charAt(i))) {
+                    pushes++;
+                }
+            }
+        }
+
+        return pushes;
+    }
+
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return result + (isSolved() ? " in " + getMovesCount() + "/" + getPushesCount() : "") + " (" + stats + ")";
+    }
+}
@@ -0,0 +1,504 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.solver;
+
+import io.github.dector.sokoban.level.Board;
+import io.github.dector.sokoban.level.DeadlockAnalysis;
+import io.github.dector.sokoban.level.Reachability;
+import io.github.dector.sokoban.level.World;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Push-optimal IDA* solver.
+ *
+ * Search runs over push states: the player may walk anywhere in his reachable region between pushes.
+ * Pushes left are bounded by the cheapest matching of boxes to distinct goals, so levels must have
+ * as many boxes as goals.
+ * Top levels of the search tree are split into ForkJoin tasks, workers share one transposition table.
+ */
+public class Solver {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+    private static final int DEFAULT_TABLE_BITS = 20;
+
+    // Depth up to which children are searched in parallel
+    private static final int SPLIT_DEPTH = 2;
+
+    private static final int NODES_FLUSH_INTERVAL = 4096;
+
+    private final ForkJoinPool pool;
+    private final int tableBits;
+
+    private long maxNodes = Long.MAX_VALUE;
+
+    public Solver() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * @param tableBits transposition table keeps {@code 2^tableBits} states.
+     */
+    public Solver(int threads, int tableBits) {
+        this.pool = new ForkJoinPool(threads);
+        this.tableBits = tableBits;
+    }
+
+    public void setMaxNodes(long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public Solution solve(Board board) {
+        if (board.getBoxesCount() != board.getGoalsCount()) {
+            throw new IllegalArgumentException(board.getBoxesCount() + " boxes for " + board.getGoalsCount() + " goals");
+        }
+
+        return new Search(new Board(board)).run();
+    }
+
+    private class Search {
+
+        private final Board root;
+
+        // Pushes to every goal and to the nearest one by cell
+        private final int[][] goalDistances;
+        private final int[] distances;
+        private final DeadlockAnalysis deadlocks;
+        private final TranspositionTable table;
+
+        private final AtomicReference<int[]> solution = new AtomicReference<int[]>();
+        private final AtomicInteger nextThreshold = new AtomicInteger();
+        private final AtomicLong nodes = new AtomicLong();
+
+        private volatile int threshold;
+        private volatile int iteration;
+        private volatile boolean aborted;
+
+        private Search(Board root) {
+            this.root = root;
+
+            goalDistances = new int[root.getGoalsCount()][];
+            int goal = 0;
+            for (int cell = 0; cell < root.getCellsCount(); cell++) {
+                if (root.isGoal(cell) && ! root.isWall(cell)) {
+                    goalDistances[goal++] = computePushDistances(root, cell);
+                }
+            }
+
+            distances = new int[root.getCellsCount()];
+            Arrays.fill(distances, UNREACHABLE);
+            for (int[] toGoal : goalDistances) {
+                for (int cell = 0; cell < distances.length; cell++) {
+                    distances[cell] = Math.min(distances[cell], toGoal[cell]);
+                }
+            }
+            deadlocks = root.getLevelData().getDeadlockAnalysis();
+            table = new TranspositionTable(tableBits);
+        }
+
+        private Solution run() {
+            long startTime = System.nanoTime();
+            resetPeakMemory();
+
+            Solution.Result result = Solution.Result.UNSOLVABLE;
+
+            int h = new GoalMatching(goalDistances, UNREACHABLE).compute(root);
+
+            if (h != UNREACHABLE) {
+                threshold = lowerBound(h);
+
+                while (true) {
+                    iteration++;
+                    nextThreshold.set(Integer.MAX_VALUE);
+
+                    pool.invoke(new SearchTask(new Board(root), 0, new int[0]));
+
+                    if (solution.get() != null) {
+                        result = Solution.Result.SOLVED;
+                        break;
+                    }
+                    if (aborted) {
+                        result = Solution.Result.ABORTED;
+                        break;
+                    }
+                    if (nextThreshold.get() == Integer.MAX_VALUE) {
+                        break;
+                    }
+
+                    threshold = nextThreshold.get();
+                }
+            }
+
+            String lurd = result == Solution.Result.SOLVED ? toLurd(root, solution.get()) : null;
+
+            SolverStats stats = new SolverStats(nodes.get(), System.nanoTime() - startTime,
+                    getPeakMemory(), iteration, pool.getParallelism());
+
+            return new Solution(result, lurd, stats);
+        }
+
+        private boolean search(Board board, int depth, Worker worker) {
+            if (solution.get() != null || aborted) {
+                return false;
+            }
+
+            if (board.isSolved()) {
+                solution.compareAndSet(null, Arrays.copyOf(worker.path, depth));
+                return true;
+            }
+
+            int h = worker.matching.compute(board);
+            if (h == UNREACHABLE) {
+                return false;
+            }
+
+            int f = depth + lowerBound(h);
+            if (f > threshold) {
+                updateNextThreshold(f);
+                return false;
+            }
+
+            Reachability reachability = worker.reachability;
+            reachability.compute(board);
+
+            long key = board.getPositionHash(reachability);
+            if (table.visit(key, iteration, depth)) {
+                return false;
+            }
+
+            worker.countNode();
+
+            int[] candidates = worker.candidates(depth, board.getBoxesCount() * Board.DIRECTIONS.length);
+            int candidatesCount = 0;
+
+            for (int box = board.nextBoxCell(0); box >= 0; box = board.nextBoxCell(box + 1)) {
+                for (World.Direction direction : Board.DIRECTIONS) {
+                    int standCell = box - board.offset(direction);
+
+                    if (reachability.isReachable(standCell)) {
+                        candidates[candidatesCount++] = standCell << 2 | direction.ordinal();
+                    }
+                }
+            }
+
+            int playerCell = board.getPlayerCell();
+
+            if (depth < SPLIT_DEPTH) {
+                List<SearchTask> tasks = new ArrayList<SearchTask>(candidatesCount);
+
+                for (int i = 0; i < candidatesCount; i++) {
+                    int candidate = candidates[i];
+                    World.Direction direction = Board.DIRECTIONS[candidate & 3];
+
+                    board.setPlayerCell(candidate >>> 2);
+                    int pushed = board.move(direction);
+                    if (pushed == Board.MOVE_BLOCKED) {
+                        continue;
+                    }
+
+                    int fromCell = board.getPlayerCell();
+                    int toCell = fromCell + pushed * board.offset(direction);
+
+                    if (distances[toCell] != UNREACHABLE && ! deadlocks.isFrozen(board, toCell)) {
+                        int[] path = Arrays.copyOf(worker.path, depth + 1);
+                        path[depth] = candidate;
+
+                        tasks.add(new SearchTask(new Board(board), depth + 1, path));
+                    }
+
+                    board.undoMove(direction, pushed);
+                }
+
+                board.setPlayerCell(playerCell);
+                ForkJoinTask.invokeAll(tasks);
+
+                return solution.get() != null;
+            }
+
+            boolean found = false;
+
+            for (int i = 0; i < candidatesCount && ! found; i++) {
+                int candidate = candidates[i];
+                World.Direction direction = Board.DIRECTIONS[candidate & 3];
+
+                board.setPlayerCell(candidate >>> 2);
+                int pushed = board.move(direction);
+                if (pushed == Board.MOVE_BLOCKED) {
+                    continue;
+                }
+
+                int fromCell = board.getPlayerCell();
+                int toCell = fromCell + pushed * board.offset(direction);
+
+                if (distances[toCell] != UNREACHABLE && ! deadlocks.isFrozen(board, toCell)) {
+                    worker.setPath(depth, candidate);
+
+                    found = search(board, depth + 1, worker);
+                }
+
+                board.undoMove(direction, pushed);
+            }
+
+            board.setPlayerCell(playerCell);
+
+            return found;
+        }
+
+        private void updateNextThreshold(int f) {
+            int current = nextThreshold.get();
+
+            while (f < current && ! nextThreshold.compareAndSet(current, f)) {
+                current = nextThreshold.get();
+            }
+        }
+
+        private class SearchTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final Board board;
+            private final int depth;
+            private final int[] path;
+
+            private SearchTask(Board board, int depth, int[] path) {
+                this.board = board;
+                this.depth = depth;
+                this.path = path;
+            }
+
+            @Override
+            protected void compute() {
+                Worker worker = new Worker(path);
+                search(board, depth, worker);
+                worker.flushNodes();
+            }
+        }
+
+        private class Worker {
+
+            private final Reachability reachability = new Reachability();
+            private final GoalMatching matching = new GoalMatching(goalDistances, UNREACHABLE);
+
+            private int[] path;
+            private int[][] candidates = new int[0][];
+
+            private int nodesNotFlushed;
+
+            private Worker(int[] prefix) {
+                path = Arrays.copyOf(prefix, Math.max(prefix.length * 2, 64));
+            }
+
+            private void setPath(int depth, int candidate) {
+                if (depth >= path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+
+                path[depth] = candidate;
+            }
+
+            private int[] candidates(int depth, int size) {
+                if (depth >= candidates.length) {
+                    candidates = Arrays.copyOf(candidates, Math.max(depth + 1, candidates.length * 2));
+                }
+                if (candidates[depth] == null || candidates[depth].length < size) {
+                    candidates[depth] = new int[size];
+                }
+
+                return candidates[depth];
+            }
+
+            private void countNode() {
+                nodesNotFlushed++;
+
+                if (nodesNotFlushed == NODES_FLUSH_INTERVAL) {
+                    flushNodes();
+                }
+            }
+
+            private void flushNodes() {
+                if (nodes.addAndGet(nodesNotFlushed) >= maxNodes) {
+                    aborted = true;
+                }
+
+                nodesNotFlushed = 0;
+            }
+        }
+    }
+
+    private static int lowerBound(int hSum) {
+        // One push may move a whole row of boxes
+        return (hSum + Board.MAX_BOXES_IN_ROW_PUSH - 1) / Board.MAX_BOXES_IN_ROW_PUSH;
+    }
+
+    /**
+     * Minimal number of pushes from every cell to {@code goalCell}, ignoring other boxes.
+     * Computed by pulling a box backwards from the goal.
+     */
+    private static int[] computePushDistances(Board board, int goalCell) {
+        int cellsCount = board.getCellsCount();
+
+        int[] distances = new int[cellsCount];
+        Arrays.fill(distances, UNREACHABLE);
+
+        int[] queue = new int[cellsCount];
+        int head = 0;
+        int tail = 0;
+
+        distances[goalCell] = 0;
+        queue[tail++] = goalCell;
+
+        while (head < tail) {
+            int cell = queue[head++];
+
+            for (World.Direction direction : Board.DIRECTIONS) {
+                int offset = board.offset(direction);
+                int fromCell = cell - offset;
+                int standCell = fromCell - offset;
+
+                if (distances[fromCell] == UNREACHABLE
+                        && ! board.isWall(fromCell)
+                        && ! board.isWall(standCell)) {
+                    distances[fromCell] = distances[cell] + 1;
+                    queue[tail++] = fromCell;
+                }
+            }
+        }
+
+        return distances;
+    }
+
+    private static String toLurd(Board initial, int[] pushes) {
+        Board board = new Board(initial);
+        StringBuilder lurd = new StringBuilder();
+
+        int cellsCount = board.getCellsCount();
+        int[] queue = new int[cellsCount];
+        int[] previous = new int[cellsCount];
+        StringBuilder walk = new StringBuilder();
+
+        for (int push : pushes) {
+            findWalk(board, push >>> 2, queue, previous, walk);
+            lurd.append(walk);
+
+            World.Direction direction = Board.DIRECTIONS[push & 3];
+            board.move(direction);
+            lurd.append(Character.toUpperCase(toLurd(direction)));
+        }
+
+        return lurd.toString();
+    }
+
+    private static void findWalk(Board board, int targetCell, int[] queue, int[] previous, StringBuilder walk) {
+        Arrays.fill(previous, -1);
+
+        int start = board.getPlayerCell();
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = start;
+        previous[start] = start;
+
+        while (head < tail && previous[targetCell] < 0) {
+            int cell = queue[head++];
+
+            for (World.Direction direction : Board.DIRECTIONS) {
+                int next = cell + board.offset(direction);
+
+                if (previous[next] < 0 && board.isFree(next)) {
+                    previous[next] = cell;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        // Walk is traced back from its end
+        walk.setLength(0);
+        for (int cell = targetCell; cell != start; cell = previous[cell]) {
+            int step = cell - previous[cell];
+
+            for (World.Direction direction : Board.DIRECTIONS) {
+                if (board.offset(direction) == step) {
+                    walk.append(toLurd(direction));
+                    break;
+                }
+            }
+        }
+        walk.reverse();
+
+        board.setPlayerCell(targetCell);
+    }
+
+    private static char toLurd(World.Direction direction) {
+        switch (direction) {
+            case LEFT:
+                return 'l';
+            case UP:
+                return 'u';
+            case RIGHT:
+                return 'r';
+            case DOWN:
+                return 'd';
+            default:
+                throw new IllegalArgumentException(String.valueOf(direction));
+        }
+    }
+
+    private static void resetPeakMemory() {
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                memoryPool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakMemory() {
+        long peak = 0;
+
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                peak += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+
+        return peak;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.solver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free table of visited states shared by all search workers.
+ *
+ * Each slot is a pair of longs: {@code key ^ data} and {@code data}.
+ * A slot torn by concurrent writers fails the xor check and is treated as empty.
+ */
+class TranspositionTable {
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    TranspositionTable(int capacityPowerOfTwo) {
+        int capacity = 1 << capacityPowerOfTwo;
+
+        slots = new AtomicLongArray(capacity * 2);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Marks state as visited at {@code depth} of the {@code iteration}.
+     *
+     * @return true if the state was already reached in this iteration with the same or lower depth.
+     */
+    boolean visit(long key, int iteration, int depth) {
+        int index = ((int) (key ^ (key >>> 32)) & mask) << 1;
+
+        long data = slots.get(index + 1);
+        long storedKey = slots.get(index) ^ data;
+
+        if (storedKey == key
+                && (int) (data >>> 32) == iteration
+                && (int) data <= depth) {
+            return true;
+        }
+
+        long newData = ((long) iteration << 32) | depth;
+        slots.lazySet(index + 1, newData);
+        slots.lazySet(index, key ^ newData);
+
+        return false;
+    }
+
+    long getSizeInBytes() {
+        return slots.length() * 8L;
+    }
+}
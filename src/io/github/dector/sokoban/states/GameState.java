@@ -29,16 +29,24 @@ import aurelienribon.tweenengine.*;
 import io.github.dector.sokoban.SokobanGame;
 import io.github.dector.sokoban.level.LevelEventCallback;
 import io.github.dector.sokoban.level.World;
+import io.github.dector.sokoban.replay.Replay;
 import io.github.dector.sokoban.util.Input;
 import io.github.dector.sokoban.util.LevelSet;
+import io.github.dector.sokoban.util.Log;
+import io.github.dector.sokoban.util.RenderStats;
 import io.github.dector.sokoban.util.Settings;
 import org.flixel.*;
 import org.flixel.plugin.tweens.TweenPlugin;
 import org.flixel.plugin.tweens.TweenSprite;
 
+import java.io.File;
+import java.io.IOException;
+
 public class GameState extends FlxState implements LevelEventCallback {
 
     private Input input;
+
+    private FlxGroup worldLayer;
     private World world;
 
     private FlxGroup levelDoneGroup;
@@ -46,9 +54,19 @@ public class GameState extends FlxState implements LevelEventCallback {
     private FlxText winText;
 
     private FlxText uiText;
+    private final HudText hudText = new HudText();
+
+    private final RenderStats renderStats = new RenderStats();
 
     private LevelSet levelSet;
 
+    // Kept between levels
+    private float speed = 1;
+    private boolean instant;
+
+    // Replay of current level is on disk, completed one is final
+    private boolean replaySaved;
+
     public GameState(LevelSet levelSet) {
         this.levelSet = levelSet;
     }
@@ -58,14 +76,20 @@ public class GameState extends FlxState implements LevelEventCallback {
         FlxG.setBgColor(0xffaaaaaa);
 
         FlxG.addPlugin(TweenPlugin.class);
+        if (Settings.LOG_TO_DEBUGGER) {
+            FlxG.addPlugin(Log.DebuggerPlugin.class);
+        }
+
+        if (Settings.DEBUG_ENABLED) {
+            FlxG.watch(renderStats, "drawCalls", "Draw calls (binds)");
+        }
 
         input = new Input();
-        world = new World(this);
-        world.init(levelSet.getCurrent());
 
-        add(world);
+        worldLayer = new FlxGroup();
+        add(worldLayer);
 
-        uiText = new FlxText(10, 10, 100);
+        uiText = new FlxText(10, 10, 200);
         uiText.scrollFactor.make(0, 0);
         add(uiText);
 
@@ -83,32 +107,96 @@ public class GameState extends FlxState implements LevelEventCallback {
         winText.scrollFactor.make(0, 0);
         levelDoneGroup.add(winText);
 
+        loadLevel();
+    }
+
+    private void loadLevel() {
+        if (world != null) {
+            saveReplay();
+            worldLayer.remove(world, true);
+            world.destroy();
+        }
+
+        world = new World(this);
+        world.setSpeed(speed);
+        world.setInstant(instant);
+        world.init(levelSet.loadCurrent());
+        replaySaved = false;
+        worldLayer.add(world);
+
         world.forceCallbackPushInfo();
+
+        // Next level is parsed while this one is played, only GL work is left for the switch
+        levelSet.prefetchNext();
+    }
+
+    private void restartLevel() {
+        TweenPlugin.manager.killAll();
+        levelDoneGroup.visible = false;
+
+        world.restart();
     }
 
     @Override
     public void update() {
+        if (Settings.DEBUG_ENABLED) {
+            renderStats.update();
+        }
+
         super.update();
 
-        if (FlxG.keys.R) {
-//            FlxG.resetState();
-            create();
+        if (input.restartPressed()) {
+            restartLevel();
         }
         if (FlxG.keys.ESCAPE) {
             SokobanGame.exit();
         }
 
-        if (input.left()) {
+        // Presses are buffered during animation, held keys keep walking once player is idle
+        if (input.leftPressed()) {
             world.tryMovePlayer(World.Direction.LEFT);
-        }
-        if (input.right()) {
+        } else if (input.rightPressed()) {
             world.tryMovePlayer(World.Direction.RIGHT);
-        }
-        if (input.up()) {
+        } else if (input.upPressed()) {
             world.tryMovePlayer(World.Direction.UP);
-        }
-        if (input.down()) {
+        } else if (input.downPressed()) {
             world.tryMovePlayer(World.Direction.DOWN);
+        } else if (world.isIdle()) {
+            if (input.left()) {
+                world.tryMovePlayer(World.Direction.LEFT);
+            } else if (input.right()) {
+                world.tryMovePlayer(World.Direction.RIGHT);
+            } else if (input.up()) {
+                world.tryMovePlayer(World.Direction.UP);
+            } else if (input.down()) {
+                world.tryMovePlayer(World.Direction.DOWN);
+            }
+        }
+        if (input.speedUpPressed()) {
+            // Instant mode goes after the fastest speed
+            if (speed < World.MAX_SPEED) {
+                speed *= 2;
+            } else {
+                instant = true;
+            }
+            applySpeed();
+        }
+        if (input.speedDownPressed()) {
+            if (instant) {
+                instant = false;
+            } else if (speed > World.MIN_SPEED) {
+                speed /= 2;
+            }
+            applySpeed();
+        }
+        if (input.pointerPressed()) {
+            world.pointerClicked(input.getPointerX(), input.getPointerY());
+        }
+        if (input.undoPressed()) {
+            world.undo();
+        }
+        if (input.redoPressed()) {
+            world.redo();
         }
         if (input.isDebugPressed()) {
             FlxG.debug = ! FlxG.debug;
@@ -117,6 +205,17 @@ public class GameState extends FlxState implements LevelEventCallback {
         if (input.actionPressed() && world.isLevelCompleted()) {
             nextLevel();
         }
+
+        // Once per frame, whatever has changed
+        if (hudText.isChanged()) {
+            uiText.setText(hudText.getText());
+        }
+    }
+
+    private void applySpeed() {
+        world.setSpeed(speed);
+        world.setInstant(instant);
+        hudText.setSpeed(speed, instant);
     }
 
     private void nextLevel() {
@@ -124,14 +223,42 @@ public class GameState extends FlxState implements LevelEventCallback {
             levelDoneGroup.visible = false;
             TweenPlugin.manager.killAll();
             levelSet.next();
-            create();
+            loadLevel();
         } else {
             FlxG.switchState(new MenuState());
         }
     }
 
+    private void saveReplay() {
+        if (world == null) {
+            return;
+        }
+
+        Replay replay = world.getReplay();
+        if (replaySaved || replay.getSize() == 0) {
+            return;
+        }
+
+        replay.setResult(world.getSteps(), world.isLevelCompleted());
+
+        String levelFileName = new File(replay.getLevelName()).getName();
+        File dir = new File(Settings.REPLAYS_DIR);
+        File file = new File(dir, levelFileName + "-" + System.currentTimeMillis() + Replay.EXTENSION);
+
+        try {
+            if (dir.isDirectory() || dir.mkdirs()) {
+                replay.write(file);
+                replaySaved = true;
+            }
+        } catch (IOException e) {
+            Log.d("Can't save replay %s: %s", file, e.getMessage());
+        }
+    }
+
     @Override
     public void onLevelCompleted() {
+        saveReplay();
+
         levelDoneGroup.visible = true;
 
         fadeForeground.setAlpha(0);
@@ -163,11 +290,31 @@ public class GameState extends FlxState implements LevelEventCallback {
 
     @Override
     public void onStepsChanged(int steps) {
-        uiText.setText("Steps: " + world.getSteps());
+        hudText.onStepsChanged(steps);
+    }
+
+    @Override
+    public void onBoxesPlacedChanged(int placed, int total) {
+        hudText.onBoxesPlacedChanged(placed, total);
+    }
+
+    @Override
+    public void onDeadlockChanged(boolean deadlocked) {
+        hudText.onDeadlockChanged(deadlocked);
+    }
+
+    @Override
+    public void onPositionRepeatedChanged(boolean repeated) {
+        hudText.onPositionRepeatedChanged(repeated);
     }
 
     @Override
     public void destroy() {
+        saveReplay();
+        levelSet.cancelPrefetch();
+        if (Settings.DEBUG_ENABLED) {
+            FlxG.unwatch(renderStats);
+        }
         super.destroy();
 
         TweenPlugin.manager.killAll();
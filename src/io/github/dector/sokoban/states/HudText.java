@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.states;
+
+import io.github.dector.sokoban.level.LevelEventCallback;
+
+/**
+ * Text of the level HUD. Rebuilt into the same buffer only when something shown has changed,
+ * so steps don't allocate.
+ */
+public class HudText implements LevelEventCallback {
+
+    private final StringBuilder text = new StringBuilder(128);
+    private boolean changed = true;
+
+    private int steps;
+    private int boxesPlaced;
+    private int boxesTotal;
+    private boolean deadlocked;
+    private boolean positionRepeated;
+
+    // Made on speed change only
+    private String speedLine = "";
+
+    @Override
+    public void onLevelCompleted() {
+    }
+
+    @Override
+    public void onStepsChanged(int steps) {
+        if (this.steps != steps) {
+            this.steps = steps;
+            changed = true;
+        }
+    }
+
+    @Override
+    public void onBoxesPlacedChanged(int placed, int total) {
+        if (boxesPlaced != placed || boxesTotal != total) {
+            boxesPlaced = placed;
+            boxesTotal = total;
+            changed = true;
+        }
+    }
+
+    @Override
+    public void onDeadlockChanged(boolean deadlocked) {
+        if (this.deadlocked != deadlocked) {
+            this.deadlocked = deadlocked;
+            changed = true;
+        }
+    }
+
+    @Override
+    public void onPositionRepeatedChanged(boolean repeated) {
+        if (positionRepeated != repeated) {
+            positionRepeated = repeated;
+            changed = true;
+        }
+    }
+
+    public void setSpeed(float speed, boolean instant) {
+        String speedLine;
+        if (instant) {
+            speedLine = "\nSpeed: instant";
+        } else if (speed != 1) {
+            speedLine = "\nSpeed: x" + speed;
+        } else {
+            speedLine = "";
+        }
+
+        if (! this.speedLine.equals(speedLine)) {
+            this.speedLine = speedLine;
+            changed = true;
+        }
+    }
+
+    /**
+     * @return true if text has changed since last {@link #getText()}.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * @return text in a buffer reused by the next call.
+     */
+    public CharSequence getText() {
+        if (changed) {
+            text.setLength(0);
+            text.append("Steps: ").append(steps)
+                    .append("\nBoxes: ").append(boxesPlaced).append('/').append(boxesTotal);
+            if (deadlocked) {
+                text.append("\nDeadlock! Z - undo, R - restart");
+            }
+            if (positionRepeated) {
+                text.append("\nBeen here before");
+            }
+            text.append(speedLine);
+
+            changed = false;
+        }
+
+        return text;
+    }
+}
@@ -43,7 +43,7 @@ public class MenuState extends FlxState {
                 FlxG.fade(0xff000000, .5f, new IFlxCamera() {
                     @Override
                     public void callback() {
-                        LevelSet levelSet = LevelSet.fromDir("assets/levels/");
+                        LevelSet levelSet = LevelSet.open(Settings.LEVELS_PATH);
                         FlxG.switchState(new GameState(levelSet));
                     }
                 });
@@ -93,6 +93,10 @@ public class MenuState extends FlxState {
         FlxG.setBgColor(0xff191919);
 
         FlxG.addPlugin(TweenPlugin.class);
+        if (Settings.LOG_TO_DEBUGGER) {
+            FlxG.addPlugin(Log.DebuggerPlugin.class);
+        }
+        Tween.setCombinedAttributesLimit(SpriteColorAccessor.MAX_VALUES);
         Tween.registerAccessor(MenuButton.class, new SpriteColorAccessor());
 
         input = new Input();
@@ -181,10 +185,10 @@ public class MenuState extends FlxState {
         }
 
         public void animateSelected(boolean selected) {
-            int[] rgb = ColorUtils.parseColor(selected ? COLOR_SELECTED : COLOR_NORMAL);
+            int color = selected ? COLOR_SELECTED : COLOR_NORMAL;
 
             Tween.to(this, SpriteColorAccessor.ALL, .5f)
-                    .target(rgb[0], rgb[1], rgb[2])
+                    .target(ColorUtils.red(color), ColorUtils.green(color), ColorUtils.blue(color))
                     .ease(TweenEquations.easeInOutSine)
                     .start(TweenPlugin.manager);
         }
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.util;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs every PNG under assets directory into a single page texture atlas in libgdx format,
+ * so world is drawn without switching textures. Run it after changing graphics.
+ *
+ * Regions are named by image path relative to assets directory without extension, e.g. {@code player/man}.
+ */
+public class AtlasPacker {
+
+    private static final int PAGE_WIDTH = 512;
+    // Keeps neighbours out of filtered edges
+    private static final int PADDING = 2;
+
+    public static void main(String[] args) throws IOException {
+        File assetsDir = new File(args.length > 0 ? args[0] : "assets/");
+        File atlasFile = new File(args.length > 1 ? args[1] : Settings.ATLAS_FILE);
+
+        String pageName = atlasFile.getName().replaceFirst("\\.atlas$", "") + ".png";
+        File pageFile = new File(atlasFile.getParentFile(), pageName);
+
+        List<Region> regions = new ArrayList<Region>();
+        collect(assetsDir, "", pageFile, regions);
+        if (regions.isEmpty()) {
+            System.err.println("No images in " + assetsDir);
+            System.exit(2);
+        }
+
+        int pageHeight = pack(regions);
+
+        BufferedImage page = new BufferedImage(PAGE_WIDTH, pageHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics graphics = page.getGraphics();
+        for (Region region : regions) {
+            graphics.drawImage(region.image, region.x, region.y, null);
+        }
+        graphics.dispose();
+        ImageIO.write(page, "png", pageFile);
+
+        Writer atlas = new OutputStreamWriter(new FileOutputStream(atlasFile), "UTF-8");
+        try {
+            atlas.write("\n" + pageName + "\n");
+            atlas.write("format: RGBA8888\n");
+            atlas.write("filter: Nearest,Nearest\n");
+            atlas.write("repeat: none\n");
+
+            for (Region region : regions) {
+                int width = region.image.getWidth();
+                int height = region.image.getHeight();
+
+                atlas.write(region.name + "\n");
+                atlas.write("  rotate: false\n");
+                atlas.write("  xy: " + region.x + ", " + region.y + "\n");
+                atlas.write("  size: " + width + ", " + height + "\n");
+                atlas.write("  orig: " + width + ", " + height + "\n");
+                atlas.write("  offset: 0, 0\n");
+                atlas.write("  index: -1\n");
+            }
+        } finally {
+            atlas.close();
+        }
+
+        System.out.println("Packed " + regions.size() + " images into " + PAGE_WIDTH + "x" + pageHeight + " " + pageFile);
+    }
+
+    private static void collect(File dir, String prefix, File pageFile, List<Region> regions) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collect(file, prefix + file.getName() + "/", pageFile, regions);
+            } else if (file.getName().endsWith(".png") && ! file.getCanonicalFile().equals(pageFile.getCanonicalFile())) {
+                String name = prefix + file.getName().substring(0, file.getName().length() - ".png".length());
+                regions.add(new Region(name, ImageIO.read(file)));
+            }
+        }
+    }
+
+    /**
+     * Places regions in shelves, tallest first.
+     *
+     * @return page height, power of two.
+     */
+    private static int pack(List<Region> regions) {
+        Collections.sort(regions, new Comparator<Region>() {
+            @Override
+            public int compare(Region r1, Region r2) {
+                int byHeight = r2.image.getHeight() - r1.image.getHeight();
+                return byHeight != 0 ? byHeight : r1.name.compareTo(r2.name);
+            }
+        });
+
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+
+        for (Region region : regions) {
+            int width = region.image.getWidth();
+            if (width > PAGE_WIDTH) {
+                throw new IllegalArgumentException(region.name + " is wider than atlas page");
+            }
+
+            if (x + width > PAGE_WIDTH) {
+                x = 0;
+                y += shelfHeight + PADDING;
+                shelfHeight = 0;
+            }
+
+            region.x = x;
+            region.y = y;
+
+            x += width + PADDING;
+            shelfHeight = Math.max(shelfHeight, region.image.getHeight());
+        }
+
+        return Integer.highestOneBit(Math.max(1, y + shelfHeight - 1)) * 2;
+    }
+
+    private static class Region {
+
+        private final String name;
+        private final BufferedImage image;
+
+        private int x;
+        private int y;
+
+        private Region(String name, BufferedImage image) {
+            this.name = name;
+            this.image = image;
+        }
+    }
+}
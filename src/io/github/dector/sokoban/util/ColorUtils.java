@@ -25,67 +25,166 @@
  */
 package io.github.dector.sokoban.util;
 
+/**
+ * Operations on colors packed into int as 0xRRGGBB. Nothing is allocated.
+ */
 public class ColorUtils {
 
-    private static final int COLOR_MASK_R = 0x00ff0000;
-    private static final int COLOR_MASK_G = 0x0000ff00;
-    private static final int COLOR_MASK_B = 0x000000ff;
-
     private static final int COLOR_SHIFT_R = 16;
     private static final int COLOR_SHIFT_G = 8;
     private static final int COLOR_SHIFT_B = 0;
 
-    public static int[] parseColor(int colorRGB) {
-        int[] rgb = new int[3];
+    private static final int CHANNEL_MAX = 0xff;
+
+    public static int red(int colorRGB) {
+        return (colorRGB >>> COLOR_SHIFT_R) & CHANNEL_MAX;
+    }
 
-        rgb[0] = (colorRGB & COLOR_MASK_R) >>> COLOR_SHIFT_R;
-        rgb[1] = (colorRGB & COLOR_MASK_G) >>> COLOR_SHIFT_G;
-        rgb[2] = (colorRGB & COLOR_MASK_B) >>> COLOR_SHIFT_B;
+    public static int green(int colorRGB) {
+        return (colorRGB >>> COLOR_SHIFT_G) & CHANNEL_MAX;
+    }
 
-        return rgb;
+    public static int blue(int colorRGB) {
+        return (colorRGB >>> COLOR_SHIFT_B) & CHANNEL_MAX;
     }
 
+    /**
+     * Channels are clamped to 0..255.
+     */
     public static int composeColor(int r, int g, int b) {
         int colorRGB = 0;
 
-        colorRGB |= r << COLOR_SHIFT_R;
-        colorRGB |= g << COLOR_SHIFT_G;
-        colorRGB |= b << COLOR_SHIFT_B;
+        colorRGB |= clamp(r) << COLOR_SHIFT_R;
+        colorRGB |= clamp(g) << COLOR_SHIFT_G;
+        colorRGB |= clamp(b) << COLOR_SHIFT_B;
 
         return colorRGB;
     }
 
-    public static int[] updateR(int[] rgb, int r) {
-        if (r < 0)
-            r = 0;
-        if (r > 0xff)
-            r = 0xff;
+    public static int withRed(int colorRGB, int r) {
+        return composeColor(r, green(colorRGB), blue(colorRGB));
+    }
 
-        rgb[0] = r;
+    public static int withGreen(int colorRGB, int g) {
+        return composeColor(red(colorRGB), g, blue(colorRGB));
+    }
 
-        return rgb;
+    public static int withBlue(int colorRGB, int b) {
+        return composeColor(red(colorRGB), green(colorRGB), b);
     }
 
-    public static int[] updateG(int[] rgb, int g) {
-        if (g < 0)
-            g = 0;
-        if (g > 0xff)
-            g = 0xff;
+    /**
+     * @return hue in degrees 0..360.
+     */
+    public static float hue(int colorRGB) {
+        int r = red(colorRGB);
+        int g = green(colorRGB);
+        int b = blue(colorRGB);
+
+        int max = Math.max(r, Math.max(g, b));
+        int delta = max - Math.min(r, Math.min(g, b));
+        if (delta == 0) {
+            return 0;
+        }
+
+        float hue;
+        if (max == r) {
+            hue = (float) (g - b) / delta;
+        } else if (max == g) {
+            hue = (float) (b - r) / delta + 2;
+        } else {
+            hue = (float) (r - g) / delta + 4;
+        }
+
+        hue *= 60;
+        return hue < 0 ? hue + 360 : hue;
+    }
+
+    /**
+     * @return saturation 0..1.
+     */
+    public static float saturation(int colorRGB) {
+        int max = Math.max(red(colorRGB), Math.max(green(colorRGB), blue(colorRGB)));
+        int min = Math.min(red(colorRGB), Math.min(green(colorRGB), blue(colorRGB)));
 
-        rgb[1] = g;
+        return max == 0 ? 0 : (float) (max - min) / max;
+    }
 
-        return rgb;
+    /**
+     * @return value (brightness) 0..1.
+     */
+    public static float value(int colorRGB) {
+        return (float) Math.max(red(colorRGB), Math.max(green(colorRGB), blue(colorRGB))) / CHANNEL_MAX;
     }
 
-    public static int[] updateB(int[] rgb, int b) {
-        if (b < 0)
-            b = 0;
-        if (b > 0xff)
-            b = 0xff;
+    /**
+     * @return {@code toHue} shifted by full turns to be within half a turn from {@code fromHue},
+     * so interpolation between them takes the shortest arc. Result may be out of 0..360.
+     */
+    public static float nearestHue(float fromHue, float toHue) {
+        float delta = (toHue - fromHue) % 360;
 
-        rgb[2] = b;
+        if (delta > 180) {
+            delta -= 360;
+        } else if (delta < -180) {
+            delta += 360;
+        }
 
-        return rgb;
+        return fromHue + delta;
     }
 
+    /**
+     * @param hue degrees, wrapped to 0..360.
+     * @param saturation 0..1.
+     * @param value 0..1.
+     */
+    public static int fromHsv(float hue, float saturation, float value) {
+        hue %= 360;
+        if (hue < 0) {
+            hue += 360;
+        }
+        saturation = Math.max(0, Math.min(saturation, 1));
+        value = Math.max(0, Math.min(value, 1));
+
+        float chroma = value * saturation;
+        float sector = hue / 60;
+        float x = chroma * (1 - Math.abs(sector % 2 - 1));
+        float m = value - chroma;
+
+        float r;
+        float g;
+        float b;
+        switch ((int) sector) {
+            case 0:
+                r = chroma; g = x; b = 0;
+                break;
+            case 1:
+                r = x; g = chroma; b = 0;
+                break;
+            case 2:
+                r = 0; g = chroma; b = x;
+                break;
+            case 3:
+                r = 0; g = x; b = chroma;
+                break;
+            case 4:
+                r = x; g = 0; b = chroma;
+                break;
+            default:
+                r = chroma; g = 0; b = x;
+                break;
+        }
+
+        return composeColor(Math.round((r + m) * CHANNEL_MAX), Math.round((g + m) * CHANNEL_MAX),
+                Math.round((b + m) * CHANNEL_MAX));
+    }
+
+    private static int clamp(int channel) {
+        if (channel < 0)
+            return 0;
+        if (channel > CHANNEL_MAX)
+            return CHANNEL_MAX;
+
+        return channel;
+    }
 }
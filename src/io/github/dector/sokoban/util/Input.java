@@ -65,6 +65,41 @@ public class Input {
         return FlxG.keys.justPressed("X");
     }
 
+    public boolean undoPressed() {
+        return FlxG.keys.justPressed("Z");
+    }
+
+    public boolean redoPressed() {
+        return FlxG.keys.justPressed("Y");
+    }
+
+    public boolean restartPressed() {
+        return FlxG.keys.justPressed("R");
+    }
+
+    public boolean speedUpPressed() {
+        return FlxG.keys.justPressed("PLUS");
+    }
+
+    public boolean speedDownPressed() {
+        return FlxG.keys.justPressed("MINUS");
+    }
+
+    /**
+     * Mouse click or touch.
+     */
+    public boolean pointerPressed() {
+        return FlxG.mouse.justPressed();
+    }
+
+    public float getPointerX() {
+        return FlxG.mouse.x;
+    }
+
+    public float getPointerY() {
+        return FlxG.mouse.y;
+    }
+
     public boolean isDebugPressed() {
         return FlxG.keys.justPressed("F2");
     }
@@ -26,20 +26,64 @@
 package io.github.dector.sokoban.util;
 
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import io.github.dector.sokoban.level.CompiledLevel;
+import io.github.dector.sokoban.level.LevelCache;
+import io.github.dector.sokoban.level.LevelPack;
+import io.github.dector.sokoban.level.PreparedLevel;
 import org.flixel.system.gdx.loaders.FlxFileHandleResolver;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 
 public class LevelSet {
 
-    private List<String> levels = new ArrayList<String>();
+    private static final LevelCache cache = new LevelCache(new File(Settings.LEVEL_CACHE_DIR));
+
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "level-loader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Source source;
 
     private int selectedLevelIndex = 0;
 
+    private Future<PreparedLevel> prefetched;
+    private int prefetchedIndex;
+
+    private LevelSet(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * @param path directory with TMX levels or XSB/SOK levels pack.
+     */
+    public static LevelSet open(String path) {
+        FileHandle handle = new FlxFileHandleResolver().resolve(path);
+
+        if (handle.isDirectory()) {
+            return fromDir(handle, path);
+        } else {
+            return fromPack(handle.file());
+        }
+    }
+
     public static LevelSet fromDir(String path) {
-        FileHandle dir = new FlxFileHandleResolver().resolve(path);
+        return fromDir(new FlxFileHandleResolver().resolve(path), path);
+    }
 
+    /**
+     * @param path prefix for level paths, usually the one {@code dir} was resolved from.
+     */
+    public static LevelSet fromDir(FileHandle dir, String path) {
         if (! dir.exists()) {
             return null;
         }
@@ -47,25 +91,34 @@ public class LevelSet {
             return null;
         }
 
-        LevelSet levelSet = new LevelSet();
+        List<String> levels = new ArrayList<String>();
 
         for (FileHandle file : dir.list(".tmx")) {
             if (! file.isDirectory()) {
                 String levelPath = path + (path.endsWith("/") ? "" : "/") + file.name();
-                levelSet.levels.add(levelPath);
+                levels.add(levelPath);
             }
         }
 
-        return levelSet;
+        return new LevelSet(new DirSource(levels));
+    }
+
+    public static LevelSet fromPack(File file) {
+        try {
+            return new LevelSet(new PackSource(LevelPack.open(file)));
+        } catch (IOException e) {
+            Log.d("Can't open levels pack %s: %s", file, e.getMessage());
+            return null;
+        }
     }
 
-    public List<String> getList() {
-        return levels;
+    public int getLevelsCount() {
+        return source.getLevelsCount();
     }
 
     public boolean hasMore() {
-        return levels.size() > 0
-                && selectedLevelIndex < levels.size() - 1;
+        return source.getLevelsCount() > 0
+                && selectedLevelIndex < source.getLevelsCount() - 1;
     }
 
     public String next() {
@@ -74,6 +127,140 @@ public class LevelSet {
     }
 
     public String getCurrent() {
-        return levels.get(selectedLevelIndex);
+        return source.getName(selectedLevelIndex);
+    }
+
+    /**
+     * Starts loading the next level in background, so {@link #loadCurrent()} doesn't wait for it after {@link #next()}.
+     */
+    public void prefetchNext() {
+        if (! hasMore()) {
+            return;
+        }
+
+        final int index = selectedLevelIndex + 1;
+        if (prefetched != null && prefetchedIndex == index) {
+            return;
+        }
+
+        cancelPrefetch();
+
+        prefetched = loader.submit(new Callable<PreparedLevel>() {
+            @Override
+            public PreparedLevel call() {
+                return load(index);
+            }
+        });
+        prefetchedIndex = index;
+    }
+
+    public void cancelPrefetch() {
+        if (prefetched != null) {
+            prefetched.cancel(false);
+            prefetched = null;
+        }
+    }
+
+    public PreparedLevel loadCurrent() {
+        if (prefetched != null && prefetchedIndex == selectedLevelIndex) {
+            Future<PreparedLevel> future = prefetched;
+            prefetched = null;
+
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Loading again here reports the failure on the calling thread
+                Log.d("Prefetch of %s failed: %s", getCurrent(), e.getCause());
+            } catch (CancellationException e) {
+                // Fall through to loading right now
+            }
+        }
+
+        return load(selectedLevelIndex);
+    }
+
+    private PreparedLevel load(int index) {
+        String name = source.getName(index);
+
+        try {
+            return new PreparedLevel(name, source.load(index));
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Can't load level " + name, e);
+        }
+    }
+
+    /**
+     * Sources
+     */
+
+    private interface Source {
+
+        public int getLevelsCount();
+
+        public String getName(int index);
+
+        /**
+         * Called from loader thread too.
+         */
+        public CompiledLevel load(int index) throws IOException;
+    }
+
+    private static class DirSource implements Source {
+
+        private final List<String> paths;
+
+        private DirSource(List<String> paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        public int getLevelsCount() {
+            return paths.size();
+        }
+
+        @Override
+        public String getName(int index) {
+            return paths.get(index);
+        }
+
+        @Override
+        public CompiledLevel load(int index) throws IOException {
+            String path = paths.get(index);
+            final FileHandle handle = new FlxFileHandleResolver().resolve(path);
+
+            // Time is unknown for packaged assets, those are read and digested
+            return cache.load(path, handle.length(), handle.lastModified(), new LevelCache.Source() {
+                @Override
+                public byte[] readBytes() {
+                    return handle.readBytes();
+                }
+            });
+        }
+    }
+
+    private static class PackSource implements Source {
+
+        private final LevelPack pack;
+
+        private PackSource(LevelPack pack) {
+            this.pack = pack;
+        }
+
+        @Override
+        public int getLevelsCount() {
+            return pack.getLevelsCount();
+        }
+
+        @Override
+        public String getName(int index) {
+            return pack.getLevelName(index);
+        }
+
+        @Override
+        public CompiledLevel load(int index) throws IOException {
+            return pack.read(index);
+        }
     }
 }
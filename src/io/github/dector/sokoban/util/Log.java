@@ -25,17 +25,205 @@
  */
 package io.github.dector.sokoban.util;
 
+import org.flixel.FlxBasic;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Debug log.
+ *
+ * Overloads with primitive parameters don't box anything, so disabled logging costs nothing.
+ * Enabled messages are put into a preallocated ring buffer and formatted by a background thread,
+ * which writes them to all sinks in batches.
+ */
 public class Log {
 
-    private static Wrapper wrapper;
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final Wrapper[] wrappers;
+
+    // Filled by writer thread, drained by DebuggerPlugin on render thread
+    private static final Queue<String> debuggerLines = new ConcurrentLinkedQueue<String>();
+
+    private static final Entry[] entries = new Entry[BUFFER_SIZE];
+    private static final Object lock = new Object();
+
+    // Guarded by lock. Entries from head to tail are waiting to be written
+    private static long head;
+    private static long tail;
+    private static int dropped;
 
     static {
-        wrapper = new SystemWrapper();
+        if (Settings.LOG_TO_DEBUGGER) {
+            wrappers = new Wrapper[] { new SystemWrapper(), new FlxWrapper() };
+        } else {
+            wrappers = new Wrapper[] { new SystemWrapper() };
+        }
+
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            entries[i] = new Entry();
+        }
+
+        if (Settings.LOG_ENABLED) {
+            Thread writer = new Thread(new Writer(), "log-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public static void d(String text) {
+        if (! Settings.LOG_ENABLED) return;
+        put(text, Entry.NO_ARGS, 0, 0, null, null, null);
+    }
+
+    public static void d(String text, int a) {
+        if (! Settings.LOG_ENABLED) return;
+        put(text, Entry.INT, a, 0, null, null, null);
+    }
+
+    public static void d(String text, int a, int b) {
+        if (! Settings.LOG_ENABLED) return;
+        put(text, Entry.INT_INT, a, b, null, null, null);
+    }
+
+    public static void d(String text, int a, int b, Object c) {
+        if (! Settings.LOG_ENABLED) return;
+        put(text, Entry.INT_INT_OBJECT, a, b, c, null, null);
+    }
+
+    public static void d(String text, Object a) {
+        if (! Settings.LOG_ENABLED) return;
+        put(text, Entry.OBJECT, 0, 0, a, null, null);
+    }
+
+    public static void d(String text, Object a, Object b) {
+        if (! Settings.LOG_ENABLED) return;
+        put(text, Entry.OBJECT_OBJECT, 0, 0, a, b, null);
     }
 
     public static void d(String text, Object... params) {
         if (! Settings.LOG_ENABLED) return;
-        wrapper.d(text, params);
+        put(text, Entry.ARRAY, 0, 0, null, null, params);
+    }
+
+    private static void put(String text, int type, int intA, int intB, Object objectA, Object objectB,
+                            Object[] params) {
+        synchronized (lock) {
+            if (tail - head == BUFFER_SIZE) {
+                // Writer is behind, newest messages are lost
+                dropped++;
+                return;
+            }
+
+            Entry entry = entries[(int) (tail % BUFFER_SIZE)];
+            entry.text = text;
+            entry.type = type;
+            entry.intA = intA;
+            entry.intB = intB;
+            entry.objectA = objectA;
+            entry.objectB = objectB;
+            entry.params = params;
+
+            tail++;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Message with parameters as they were passed.
+     */
+    private static class Entry {
+
+        private static final int NO_ARGS = 0;
+        private static final int INT = 1;
+        private static final int INT_INT = 2;
+        private static final int INT_INT_OBJECT = 3;
+        private static final int OBJECT = 4;
+        private static final int OBJECT_OBJECT = 5;
+        private static final int ARRAY = 6;
+
+        private String text;
+        private int type;
+        private int intA;
+        private int intB;
+        private Object objectA;
+        private Object objectB;
+        private Object[] params;
+
+        private String format() {
+            switch (type) {
+                case INT:
+                    return String.format(text, intA);
+                case INT_INT:
+                    return String.format(text, intA, intB);
+                case INT_INT_OBJECT:
+                    return String.format(text, intA, intB, objectA);
+                case OBJECT:
+                    return String.format(text, objectA);
+                case OBJECT_OBJECT:
+                    return String.format(text, objectA, objectB);
+                case ARRAY:
+                    return String.format(text, params);
+                default:
+                    return text;
+            }
+        }
+
+        private void clear() {
+            // Don't keep logged objects alive
+            objectA = null;
+            objectB = null;
+            params = null;
+        }
+    }
+
+    private static class Writer implements Runnable {
+
+        private final StringBuilder batch = new StringBuilder();
+
+        @Override
+        public void run() {
+            while (true) {
+                long from;
+                long to;
+                int droppedCount;
+
+                synchronized (lock) {
+                    while (head == tail) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+
+                    from = head;
+                    to = tail;
+                    droppedCount = dropped;
+                    dropped = 0;
+                }
+
+                // Producers don't touch entries until head is moved
+                batch.setLength(0);
+                for (long i = from; i < to; i++) {
+                    Entry entry = entries[(int) (i % BUFFER_SIZE)];
+                    batch.append(entry.format()).append('\n');
+                    entry.clear();
+                }
+                if (droppedCount > 0) {
+                    batch.append(droppedCount).append(" log messages dropped\n");
+                }
+
+                synchronized (lock) {
+                    head = to;
+                }
+
+                for (Wrapper wrapper : wrappers) {
+                    wrapper.write(batch);
+                }
+            }
+        }
     }
 
     /**
@@ -44,28 +232,59 @@ public class Log {
 
     private interface Wrapper {
 
-        public void d(String text, Object... params);
+        /**
+         * @param lines one or more lines, each ends with line break.
+         */
+        public void write(CharSequence lines);
     }
 
     private static class SystemWrapper implements Wrapper {
 
         @Override
-        public void d(String text, Object... params) {
-            System.out.println(String.format(text, params));
+        public void write(CharSequence lines) {
+            System.out.print(lines);
         }
     }
 
+    /**
+     * Flixel debugger isn't thread safe, so lines are only queued here and added to it by {@link DebuggerPlugin}.
+     */
     private static class FlxWrapper implements Wrapper {
 
-        private org.flixel.system.debug.Log log;
+        @Override
+        public void write(CharSequence lines) {
+            int start = 0;
 
-        private FlxWrapper() {
-            log = new org.flixel.system.debug.Log("Log", 100, 100);
+            for (int i = 0; i < lines.length(); i++) {
+                if (lines.charAt(i) == '\n') {
+                    debuggerLines.offer(lines.subSequence(start, i).toString());
+                    start = i + 1;
+                }
+            }
         }
+    }
+
+    /**
+     * Moves queued lines to flixel debugger on render thread. Add it with {@code FlxG.addPlugin()}.
+     */
+    public static class DebuggerPlugin extends FlxBasic {
+
+        private org.flixel.system.debug.Log log;
 
         @Override
-        public void d(String text, Object... params) {
-            log.add(String.format(text, params));
+        public void update() {
+            if (debuggerLines.isEmpty()) {
+                return;
+            }
+
+            if (log == null) {
+                log = new org.flixel.system.debug.Log("Log", 100, 100);
+            }
+
+            String line;
+            while ((line = debuggerLines.poll()) != null) {
+                log.add(line);
+            }
         }
     }
 }
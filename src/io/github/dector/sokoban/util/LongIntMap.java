@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.util;
+
+/**
+ * Map from long keys to int values on open addressing, lookups and updates don't allocate.
+ * Storage grows only when map becomes half full.
+ */
+public class LongIntMap extends OpenAddressingMap {
+
+    private long[] keys;
+
+    public LongIntMap() {
+        this(64);
+    }
+
+    /**
+     * @param capacity power of two.
+     */
+    public LongIntMap(int capacity) {
+        super(capacity);
+        keys = new long[capacity];
+    }
+
+    /**
+     * @return value or 0 if there is no such key.
+     */
+    public int get(long key) {
+        int i = indexOf(key);
+        return used[i] ? values[i] : 0;
+    }
+
+    public boolean containsKey(long key) {
+        return used[indexOf(key)];
+    }
+
+    public void put(long key, int value) {
+        int i = indexOf(key);
+
+        if (! used[i]) {
+            if (! occupy(i)) {
+                i = indexOf(key);
+                occupy(i);
+            }
+            keys[i] = key;
+        }
+
+        values[i] = value;
+    }
+
+    public void remove(long key) {
+        int i = indexOf(key);
+
+        if (used[i]) {
+            removeAt(i);
+        }
+    }
+
+    private int indexOf(long key) {
+        int i = slot(key);
+
+        while (used[i] && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    @Override
+    protected int slotOfKeyAt(int index) {
+        return slot(keys[index]);
+    }
+
+    @Override
+    protected void moveKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    @Override
+    protected void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        allocate(capacity);
+        keys = new long[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.util;
+
+import java.util.Arrays;
+
+/**
+ * Int values on open addressing with linear probing, lookups and updates don't allocate.
+ * Storage grows only when map becomes half full.
+ *
+ * Subclasses keep keys and hash them, probing and removal are done here.
+ */
+abstract class OpenAddressingMap {
+
+    protected int[] values;
+    protected boolean[] used;
+
+    protected int mask;
+    protected int size;
+
+    /**
+     * @param capacity power of two.
+     */
+    OpenAddressingMap(int capacity) {
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * @return home slot of the key stored at {@code index}.
+     */
+    protected abstract int slotOfKeyAt(int index);
+
+    protected abstract void moveKey(int from, int to);
+
+    /**
+     * Replaces storage with empty one of {@code capacity} and puts all entries of the old one back.
+     */
+    protected abstract void rehash(int capacity);
+
+    /**
+     * Takes a free slot found by probing. Slots change if storage grows, so the caller probes again then.
+     *
+     * @return false if storage has grown.
+     */
+    protected boolean occupy(int index) {
+        if (2 * (size + 1) > used.length) {
+            rehash(used.length * 2);
+            return false;
+        }
+
+        used[index] = true;
+        size++;
+        return true;
+    }
+
+    protected void allocate(int capacity) {
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    protected void removeAt(int index) {
+        int i = index;
+
+        used[i] = false;
+        size--;
+
+        // Move back entries that were placed after the removed one, so lookups don't stop at the hole
+        for (int next = (i + 1) & mask; used[next]; next = (next + 1) & mask) {
+            int home = slotOfKeyAt(next);
+
+            if (((next - home) & mask) >= ((next - i) & mask)) {
+                moveKey(next, i);
+                values[i] = values[next];
+                used[i] = true;
+                used[next] = false;
+                i = next;
+            }
+        }
+    }
+}
@@ -33,12 +33,26 @@ public class Settings {
     // Debug
     public static final boolean DEBUG_ENABLED = true;
     public static final boolean LOG_ENABLED = DEBUG_ENABLED && false;
+    // Log is also shown in flixel debugger
+    public static final boolean LOG_TO_DEBUGGER = false;
 
     public static final Class<? extends FlxState> START_STATE = MenuState.class;
 
     // Graphics
     public static final PlayerSkin PLAYER_SKIN = PlayerSkin.PANK;
+    // World sprites are taken from it when it exists, see AtlasPacker
+    public static final String ATLAS_FILE = "assets/world.atlas";
+
+    // Levels
+    // Directory with TMX levels or XSB/SOK levels pack
+    public static final String LEVELS_PATH = "assets/levels/";
+    public static final String LEVEL_CACHE_DIR = "cache/levels/";
+    public static final String REPLAYS_DIR = "replays/";
 
     // Controls
     public static final boolean GAMEPAD_ENABLED = false;
+    // Moves pressed during animation that are made after it, 0 drops them
+    public static final int INPUT_BUFFER_DEPTH = 2;
+    // Press into full buffer replaces the last buffered move instead of being dropped
+    public static final boolean INPUT_BUFFER_COALESCE = true;
 }
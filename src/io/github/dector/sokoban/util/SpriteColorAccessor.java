@@ -25,34 +25,72 @@
  */
 package io.github.dector.sokoban.util;
 
+import aurelienribon.tweenengine.Tween;
 import aurelienribon.tweenengine.TweenAccessor;
 import org.flixel.FlxSprite;
 
+/**
+ * Tweens sprite color by RGBA channels (0..255) or in HSV space (hue in degrees, saturation and value 0..1).
+ * Works on packed colors only, so tweening allocates nothing.
+ *
+ * {@link #RGBA} tweens {@link #MAX_VALUES} values, raise tween engine limit with
+ * {@code Tween.setCombinedAttributesLimit()} before using it. Build HSV tweens with {@link #toHsv},
+ * so hue goes the shortest way around the color wheel.
+ */
 public class SpriteColorAccessor implements TweenAccessor<FlxSprite> {
 
     public static final int R = 0x01;
     public static final int G = 0x02;
     public static final int B = 0x04;
+    public static final int A = 0x08;
 
     public static final int ALL = R | G | B;
+    public static final int RGBA = ALL | A;
+
+    // Not combined with channels
+    public static final int HSV = 0x10;
+
+    public static final int MAX_VALUES = 4;
+
+    private static final int ALPHA_MAX = 0xff;
+
+    /**
+     * @return tween of sprite color to {@code colorRGB} in HSV space.
+     */
+    public static Tween toHsv(FlxSprite sprite, int colorRGB, float duration) {
+        float hue = ColorUtils.nearestHue(ColorUtils.hue(sprite.getColor()), ColorUtils.hue(colorRGB));
+
+        return Tween.to(sprite, HSV, duration)
+                .target(hue, ColorUtils.saturation(colorRGB), ColorUtils.value(colorRGB));
+    }
 
     @Override
     public int getValues(FlxSprite flxSprite, int type, float[] values) {
-        int valueIndex = 0;
-
         int color = flxSprite.getColor();
-        int[] rgb = ColorUtils.parseColor(color);
+
+        if (type == HSV) {
+            values[0] = ColorUtils.hue(color);
+            values[1] = ColorUtils.saturation(color);
+            values[2] = ColorUtils.value(color);
+            return 3;
+        }
+
+        int valueIndex = 0;
 
         if ((type & R) != 0) {
-            values[valueIndex] = rgb[0];
+            values[valueIndex] = ColorUtils.red(color);
             valueIndex++;
         }
         if ((type & G) != 0) {
-            values[valueIndex] = rgb[1];
+            values[valueIndex] = ColorUtils.green(color);
             valueIndex++;
         }
         if ((type & B) != 0) {
-            values[valueIndex] = rgb[2];
+            values[valueIndex] = ColorUtils.blue(color);
+            valueIndex++;
+        }
+        if ((type & A) != 0) {
+            values[valueIndex] = flxSprite.getAlpha() * ALPHA_MAX;
             valueIndex++;
         }
 
@@ -61,28 +99,33 @@ public class SpriteColorAccessor implements TweenAccessor<FlxSprite> {
 
     @Override
     public void setValues(FlxSprite flxSprite, int type, float[] values) {
+        if (type == HSV) {
+            flxSprite.setColor(ColorUtils.fromHsv(values[0], values[1], values[2]));
+            return;
+        }
+
         int lastIndex = 0;
 
         int color = flxSprite.getColor();
-        int[] rgb = ColorUtils.parseColor(color);
 
         if ((type & R) != 0) {
-            ColorUtils.updateR(rgb, (int) values[lastIndex]);
+            color = ColorUtils.withRed(color, (int) values[lastIndex]);
             lastIndex++;
         }
         if ((type & G) != 0) {
-            ColorUtils.updateG(rgb, (int) values[lastIndex]);
+            color = ColorUtils.withGreen(color, (int) values[lastIndex]);
             lastIndex++;
         }
         if ((type & B) != 0) {
-            ColorUtils.updateB(rgb, (int) values[lastIndex]);
+            color = ColorUtils.withBlue(color, (int) values[lastIndex]);
+            lastIndex++;
+        }
+        if ((type & ALL) != 0) {
+            flxSprite.setColor(color);
+        }
+        if ((type & A) != 0) {
+            flxSprite.setAlpha(Math.max(0, Math.min(values[lastIndex] / ALPHA_MAX, 1)));
             lastIndex++;
         }
-
-        color = ColorUtils.composeColor(rgb[0], rgb[1], rgb[2]);
-
-        flxSprite.setColor(color);
     }
-
-
 }
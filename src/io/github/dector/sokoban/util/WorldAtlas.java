@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2014, dector (dector9@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.github.dector.sokoban.util;
+
+import org.flixel.system.gdx.loaders.FlxFileHandleResolver;
+
+/**
+ * Names of world graphics. They are regions of {@link Settings#ATLAS_FILE} when it exists, so sprites
+ * share one texture and are drawn in one batch, and separate images otherwise.
+ */
+public class WorldAtlas {
+
+    private static final String ASSETS_DIR = "assets/";
+    private static final String IMAGE_EXTENSION = ".png";
+
+    private static Boolean available;
+
+    /**
+     * @param assetFile image path, e.g. {@code assets/box.png}.
+     * @return graphic name accepted by {@code loadGraphic()} and {@code loadMap()}.
+     */
+    public static String graphic(String assetFile) {
+        if (! isAvailable() || ! assetFile.startsWith(ASSETS_DIR) || ! assetFile.endsWith(IMAGE_EXTENSION)) {
+            return assetFile;
+        }
+
+        // Region names are set by AtlasPacker
+        String region = assetFile.substring(ASSETS_DIR.length(), assetFile.length() - IMAGE_EXTENSION.length());
+        return Settings.ATLAS_FILE + ":" + region;
+    }
+
+    private static boolean isAvailable() {
+        if (available == null) {
+            available = new FlxFileHandleResolver().resolve(Settings.ATLAS_FILE).exists();
+        }
+
+        return available;
+    }
+}